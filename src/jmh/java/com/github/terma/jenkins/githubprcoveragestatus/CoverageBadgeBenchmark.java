@@ -0,0 +1,77 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render path of coverage badge: cached lookup vs full render vs old way
+ * (template read from classpath for each request).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoverageBadgeBenchmark {
+
+    private CoverageBadge badge;
+    private int i;
+
+    @Setup
+    public void setup() {
+        badge = new CoverageBadge(CoverageBadge.loadTemplate(), CoverageBadge.DEFAULT_CACHE_SIZE);
+    }
+
+    @Benchmark
+    public String cached() {
+        return badge.get(0.92f, 0.7f, 80, 90).getSvg();
+    }
+
+    /**
+     * Different badges each call, cache keeps only last {@link CoverageBadge#DEFAULT_CACHE_SIZE}
+     */
+    @Benchmark
+    public String cacheMiss() {
+        i = (i + 1) % 100000;
+        return badge.get(i / 100000f, 0.7f, 80, 90).getSvg();
+    }
+
+    @Benchmark
+    public String render() {
+        return badge.render(0.92f, 0.7f, 80, 90).getSvg();
+    }
+
+    @Benchmark
+    public String loadTemplateAndRender() {
+        return new CoverageBadge(CoverageBadge.loadTemplate(), 0).render(0.92f, 0.7f, 80, 90).getSvg();
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dev vs test comparison as it runs on agent, {@link CoverageDiffCallable} over two synthetic
+ * Cobertura reports of given size, or over master baseline and report.
+ * 1 GB reports are opt-in like in {@link ParserBenchmark}: <code>-p sizeMb=1,100,1024</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class CoverageDiffBenchmark {
+
+    @Param({"1", "100"})
+    public int sizeMb;
+
+    private File dir;
+    private byte[] baseline;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("diff-benchmark").toFile();
+        final long bytes = sizeMb * 1024L * 1024;
+        final File dev = SyntheticReports.write(SyntheticReports.Format.COBERTURA, bytes, false, new File(dir, "dev.xml"));
+        SyntheticReports.write(SyntheticReports.Format.COBERTURA, bytes, true, new File(dir, "test.xml"));
+        try (InputStream in = new BufferedInputStream(new FileInputStream(dev))) {
+            baseline = CoverageBaseline.write(LineCoverage.read(dev.getPath(), in, new FileIds()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Benchmark
+    public CoverageDiff reports() throws IOException {
+        return new CoverageDiffCallable("dev.xml", "test.xml").invoke(dir, null);
+    }
+
+    @Benchmark
+    public CoverageDiff baseline() throws IOException {
+        return new CoverageDiffCallable(baseline, "test.xml").invoke(dir, null);
+    }
+
+}
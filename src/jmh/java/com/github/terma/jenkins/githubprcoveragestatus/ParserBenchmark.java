@@ -0,0 +1,124 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each coverage parser over synthetic report of given size, see {@link SyntheticReports}.
+ * Besides operations per second reports <code>megabytes</code> of report read per second.
+ * <p>
+ * 1 GB reports take a while to generate and parse, so they are opt-in:
+ * <code>-p sizeMb=1,100,1024</code>. Heap is fixed to make peak heap comparable between runs,
+ * parser which holds whole report fails with <code>OutOfMemoryError</code> on big one.
+ * <p>
+ * Streaming parsers (Jacoco, Clover, SimpleCov) should keep <code>heap.live.peak</code> of
+ * {@link PeakHeapProfiler} about the same for 1 MB and 100 MB reports, growth with size means
+ * parser started to hold report or its subtrees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ParserBenchmark {
+
+    @Param({"JACOCO", "COBERTURA", "CLOVER", "SIMPLECOV"})
+    public SyntheticReports.Format format;
+
+    @Param({"1", "100"})
+    public int sizeMb;
+
+    private File dir;
+    private String report;
+    private double reportMb;
+    private CoverageReportParser parser;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("parser-benchmark").toFile();
+        final File file = SyntheticReports.write(format, sizeMb * 1024L * 1024, false,
+                new File(dir, "report." + format.getExtension()));
+        report = file.getPath();
+        reportMb = file.length() / (1024.0 * 1024);
+        parser = parser(format);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static CoverageReportParser parser(final SyntheticReports.Format format) {
+        switch (format) {
+            case JACOCO:
+                return new JacocoParser("LINE");
+            case COBERTURA:
+                return new CoberturaParser();
+            case CLOVER:
+                return new CloverParser();
+            case SIMPLECOV:
+                return new SimpleCovParser(true);
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    @Benchmark
+    public float parse(final Read read) {
+        read.megabytes += reportMb;
+        return parser.get(report).getCoverage();
+    }
+
+    /**
+     * Megabytes of report read, normalized by time as throughput.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Read {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+
+    }
+
+}
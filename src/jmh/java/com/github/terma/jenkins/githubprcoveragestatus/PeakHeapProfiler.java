@@ -0,0 +1,127 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Peak heap of benchmark iteration, complements <code>-prof gc</code> which shows only allocation rate.
+ * Heap is sampled by background thread each {@link #SAMPLE_MILLIS}:
+ * <ul>
+ * <li><code>heap.peak</code> - max used heap including garbage, bounded by <code>-Xmx</code></li>
+ * <li><code>heap.live.peak</code> - max heap left after collections, close to what parser really holds,
+ * for example grows with report if parser reads whole report to memory</li>
+ * </ul>
+ * Enable with <code>-prof com.github.terma.jenkins.githubprcoveragestatus.PeakHeapProfiler</code>.
+ */
+public class PeakHeapProfiler implements InternalProfiler {
+
+    private static final long SAMPLE_MILLIS = 5;
+    private static final double MB = 1024 * 1024;
+
+    private final List<MemoryPoolMXBean> pools = heapPools();
+    private Sampler sampler;
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        final List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heap.add(pool);
+        }
+        return heap;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Peak used and live heap";
+    }
+
+    @Override
+    public void beforeIteration(final BenchmarkParams benchmarkParams, final IterationParams iterationParams) {
+        sampler = new Sampler(pools);
+        sampler.start();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(
+            final BenchmarkParams benchmarkParams, final IterationParams iterationParams, final IterationResult result) {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Arrays.asList(
+                new ScalarResult("heap.peak", sampler.peak / MB, "MB", AggregationPolicy.MAX),
+                new ScalarResult("heap.live.peak", sampler.livePeak / MB, "MB", AggregationPolicy.MAX));
+    }
+
+    private static class Sampler extends Thread {
+
+        private final List<MemoryPoolMXBean> pools;
+        private volatile long peak;
+        private volatile long livePeak;
+
+        Sampler(final List<MemoryPoolMXBean> pools) {
+            super("peak-heap-sampler");
+            setDaemon(true);
+            this.pools = pools;
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                sample();
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            sample();
+        }
+
+        private void sample() {
+            long used = 0;
+            long live = 0;
+            for (MemoryPoolMXBean pool : pools) {
+                used += pool.getUsage().getUsed();
+                final MemoryUsage afterGc = pool.getCollectionUsage();
+                if (afterGc != null) live += afterGc.getUsed();
+            }
+            peak = Math.max(peak, used);
+            livePeak = Math.max(livePeak, live);
+        }
+
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates coverage reports of given size for benchmarks. Report is a header, many similar
+ * units (package, class or file depends on format) and a footer. Units are written one by one,
+ * so generator itself never holds more than one unit in memory even for 1 GB report.
+ * <p>
+ * Each unit has 10 lines where 5 are covered, so coverage of any generated report is 50%.
+ * Test variant of Cobertura report loses coverage of line 3 in each 7th class
+ * to give {@link CoverageDiff} something to find.
+ */
+public final class SyntheticReports {
+
+    static final int LINES_PER_UNIT = 10;
+    static final int COVERED_PER_UNIT = 5;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String JACOCO_LINES = lines("<line nr=\"%d\" mi=\"%d\" ci=\"%d\" mb=\"0\" cb=\"0\"/>");
+    private static final String CLOVER_LINES = lines("<line num=\"%d\" count=\"%3$d\" type=\"stmt\"/>");
+
+    public enum Format {
+
+        JACOCO("xml") {
+            @Override
+            String header(final int units) {
+                return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                        + "<!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.1//EN\" \"report.dtd\">"
+                        + "<report name=\"synthetic\">"
+                        + "<sessioninfo id=\"synthetic\" start=\"1500000000000\" dump=\"1500000001000\"/>\n";
+            }
+
+            @Override
+            String unit(final int i, final boolean test) {
+                return "<package name=\"p" + i + "\"><class name=\"p" + i + "/C\" sourcefilename=\"C.java\">"
+                        + "<method name=\"m\" desc=\"()V\" line=\"1\">"
+                        + "<counter type=\"INSTRUCTION\" missed=\"20\" covered=\"20\"/>"
+                        + "<counter type=\"LINE\" missed=\"5\" covered=\"5\"/>"
+                        + "<counter type=\"METHOD\" missed=\"0\" covered=\"1\"/></method>"
+                        + "<counter type=\"INSTRUCTION\" missed=\"20\" covered=\"20\"/>"
+                        + "<counter type=\"LINE\" missed=\"5\" covered=\"5\"/>"
+                        + "<counter type=\"METHOD\" missed=\"0\" covered=\"1\"/>"
+                        + "<counter type=\"CLASS\" missed=\"0\" covered=\"1\"/></class>"
+                        + "<sourcefile name=\"C.java\">" + JACOCO_LINES
+                        + "<counter type=\"LINE\" missed=\"5\" covered=\"5\"/></sourcefile>"
+                        + "<counter type=\"LINE\" missed=\"5\" covered=\"5\"/></package>\n";
+            }
+
+            @Override
+            String footer(final int units) {
+                return "<counter type=\"INSTRUCTION\" missed=\"" + 20L * units + "\" covered=\"" + 20L * units + "\"/>"
+                        + "<counter type=\"LINE\" missed=\"" + 5L * units + "\" covered=\"" + 5L * units + "\"/>"
+                        + "<counter type=\"METHOD\" missed=\"0\" covered=\"" + units + "\"/>"
+                        + "<counter type=\"CLASS\" missed=\"0\" covered=\"" + units + "\"/></report>\n";
+            }
+        },
+
+        COBERTURA("xml") {
+            @Override
+            String header(final int units) {
+                final long valid = (long) LINES_PER_UNIT * units;
+                final long covered = (long) COVERED_PER_UNIT * units;
+                return "<?xml version=\"1.0\"?>"
+                        + "<!DOCTYPE coverage SYSTEM \"http://cobertura.sourceforge.net/xml/coverage-04.dtd\">"
+                        + "<coverage line-rate=\"0.5\" branch-rate=\"0.5\" lines-covered=\"" + covered
+                        + "\" lines-valid=\"" + valid + "\" branches-covered=\"" + units
+                        + "\" branches-valid=\"" + 2L * units + "\" complexity=\"0\" version=\"2.1.1\" timestamp=\"1500000000000\">"
+                        + "<sources><source>/src</source></sources><packages>"
+                        + "<package name=\"p\" line-rate=\"0.5\" branch-rate=\"0.5\" complexity=\"0\"><classes>\n";
+            }
+
+            @Override
+            String unit(final int i, final boolean test) {
+                final StringBuilder lines = new StringBuilder();
+                for (int line = 1; line <= LINES_PER_UNIT; line++) {
+                    final boolean lost = test && line == 3 && i % 7 == 0;
+                    final int hits = line % 2 == 1 && !lost ? line : 0;
+                    lines.append("<line number=\"").append(line).append("\" hits=\"").append(hits)
+                            .append("\" branch=\"false\"/>");
+                }
+                return "<class name=\"p.C" + i + "\" filename=\"p/C" + i + ".java\" line-rate=\"0.5\" branch-rate=\"0.5\" complexity=\"0\">"
+                        + "<methods><method name=\"m\" signature=\"()V\" line-rate=\"0.5\" branch-rate=\"0.5\">"
+                        + "<lines><line number=\"1\" hits=\"1\" branch=\"false\"/></lines></method></methods>"
+                        + "<lines>" + lines + "</lines></class>\n";
+            }
+
+            @Override
+            String footer(final int units) {
+                return "</classes></package></packages></coverage>\n";
+            }
+        },
+
+        CLOVER("xml") {
+            @Override
+            String header(final int units) {
+                final long statements = (long) LINES_PER_UNIT * units;
+                final long covered = (long) COVERED_PER_UNIT * units;
+                return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                        + "<coverage generated=\"1500000000000\" clover=\"4.4.1\"><project timestamp=\"1500000000000\" name=\"synthetic\">"
+                        + "<metrics classes=\"" + units + "\" methods=\"" + units + "\" coveredmethods=\"" + units
+                        + "\" conditionals=\"0\" coveredconditionals=\"0\" statements=\"" + statements
+                        + "\" coveredstatements=\"" + covered + "\" elements=\"" + (statements + units)
+                        + "\" coveredelements=\"" + (covered + units) + "\" packages=\"" + units
+                        + "\" files=\"" + units + "\" loc=\"" + statements + "\" ncloc=\"" + statements + "\"/>\n";
+            }
+
+            @Override
+            String unit(final int i, final boolean test) {
+                return "<package name=\"p" + i + "\"><metrics statements=\"10\" coveredstatements=\"5\"/>"
+                        + "<file name=\"C.java\" path=\"/src/p" + i + "/C.java\">"
+                        + "<metrics statements=\"10\" coveredstatements=\"5\"/>"
+                        + "<class name=\"C\"><metrics statements=\"10\" coveredstatements=\"5\"/></class>"
+                        + CLOVER_LINES + "</file></package>\n";
+            }
+
+            @Override
+            String footer(final int units) {
+                return "</project></coverage>\n";
+            }
+        },
+
+        SIMPLECOV("json") {
+            @Override
+            String header(final int units) {
+                return "{\"timestamp\":1500000000,\"command_name\":\"RSpec\",\"files\":[\n";
+            }
+
+            @Override
+            String unit(final int i, final boolean test) {
+                return (i == 0 ? "" : ",") + "{\"filename\":\"/src/p" + i + "/c.rb\",\"covered_percent\":50.0,"
+                        + "\"coverage\":{\"lines\":[1,0,null,2,0,3,0,\"ignored\",4,0,5,0],\"branches\":[]},"
+                        + "\"covered_strength\":1.5,\"covered_lines\":5,\"lines_of_code\":10}\n";
+            }
+
+            @Override
+            String footer(final int units) {
+                return "],\"metrics\":{\"covered_percent\":50.0,\"covered_strength\":1.5,\"covered_lines\":"
+                        + (long) COVERED_PER_UNIT * units + ",\"total_lines\":" + (long) LINES_PER_UNIT * units + "}}\n";
+            }
+        };
+
+        private final String extension;
+
+        Format(final String extension) {
+            this.extension = extension;
+        }
+
+        abstract String header(int units);
+
+        abstract String unit(int i, boolean test);
+
+        abstract String footer(int units);
+
+        public String getExtension() {
+            return extension;
+        }
+
+    }
+
+    private SyntheticReports() {
+        throw new UnsupportedOperationException("Util class!");
+    }
+
+    /**
+     * Lines of unit by pattern with arguments: line number, missed and covered count.
+     */
+    private static String lines(final String pattern) {
+        final StringBuilder lines = new StringBuilder();
+        for (int line = 1; line <= LINES_PER_UNIT; line++) {
+            final int covered = line % 2 == 1 ? 1 : 0;
+            lines.append(String.format(pattern, line, 1 - covered, covered));
+        }
+        return lines.toString();
+    }
+
+    /**
+     * Number of units to get report of about given size.
+     */
+    static int units(final Format format, final long bytes) {
+        final int unit = format.unit(1_000_000, true).length();
+        return (int) Math.max(1, (bytes - format.header(1).length()) / unit);
+    }
+
+    /**
+     * @param bytes - approximate size of report
+     * @param test  - variant of report, differs only for {@link Format#COBERTURA}
+     * @return generated report
+     */
+    public static File write(final Format format, final long bytes, final boolean test, final File file) throws IOException {
+        final int units = units(format, bytes);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            writer.write(format.header(units));
+            for (int i = 0; i < units; i++) writer.write(format.unit(i, test));
+            writer.write(format.footer(units));
+        }
+        return file;
+    }
+
+}
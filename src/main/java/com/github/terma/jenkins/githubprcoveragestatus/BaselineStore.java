@@ -0,0 +1,266 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * On disk store of master {@link CoverageBaseline} by repository and commit SHA.
+ * <pre>
+ * root/
+ *   sequence
+ *   sha1(repository)/
+ *     sequence-commitSha.baseline
+ * </pre>
+ * Files are written to temporary file and moved, so reader never sees partial baseline.
+ * Each save takes next number from store wide <code>sequence</code>, so order of baselines
+ * doesn't depend on file times. Only last <code>retention</code> commits are kept for each repository
+ * and only last {@link #MAX_REPOSITORIES} saved repositories, older are evicted on save.
+ * Store is cheap to create, all instances share one lock.
+ */
+final class BaselineStore {
+
+    static final int DEFAULT_RETENTION = 20;
+    static final int MAX_REPOSITORIES = 1000;
+
+    private static final String EXTENSION = ".baseline";
+    private static final String SEQUENCE = "sequence";
+    private static final Pattern SHA = Pattern.compile("[0-9a-fA-F]{7,64}");
+
+    private static final Object LOCK = new Object();
+
+    private final File root;
+    private final int retention;
+    private final int maxRepositories;
+
+    /**
+     * @param retention - commits to keep for each repository, zero or less means {@link #DEFAULT_RETENTION}
+     */
+    BaselineStore(final File root, final int retention) {
+        this(root, retention, MAX_REPOSITORIES);
+    }
+
+    BaselineStore(final File root, final int retention, final int maxRepositories) {
+        this.root = root;
+        this.retention = retention > 0 ? retention : DEFAULT_RETENTION;
+        this.maxRepositories = maxRepositories;
+    }
+
+    private static String hash(final String repo) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(repo.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) result.append(String.format("%02x", b));
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String checkSha(final String sha) {
+        if (sha == null || !SHA.matcher(sha).matches()) {
+            throw new IllegalArgumentException("Strange commit SHA: " + sha);
+        }
+        return sha.toLowerCase();
+    }
+
+    private File getRepoDir(final String repo) {
+        return new File(root, hash(repo));
+    }
+
+    void save(final String repo, final String sha, final byte[] baseline) throws IOException {
+        synchronized (LOCK) {
+            saveLocked(repo, sha, baseline);
+        }
+    }
+
+    private void saveLocked(final String repo, final String sha, final byte[] baseline) throws IOException {
+        final File repoDir = getRepoDir(repo);
+        Files.createDirectories(repoDir.toPath());
+        final String checkedSha = checkSha(sha);
+        final File[] existing = list(repoDir);
+        final File file = new File(repoDir, String.format("%019d-%s%s", nextSequence(), checkedSha, EXTENSION));
+        write(repoDir, file, baseline);
+        // previous baseline of the same commit
+        for (File old : existing) {
+            if (checkedSha.equals(getSha(old))) Files.deleteIfExists(old.toPath());
+        }
+        evict(repoDir);
+        evictRepositories();
+    }
+
+    private static void write(final File dir, final File file, final byte[] content) throws IOException {
+        final File temp = File.createTempFile("baseline", ".tmp", dir);
+        try {
+            Files.write(temp.toPath(), content);
+            try {
+                Files.move(temp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * If sequence is lost, it continues from biggest number in store.
+     */
+    private long nextSequence() throws IOException {
+        final File file = new File(root, SEQUENCE);
+        long last = -1;
+        if (file.isFile()) {
+            try {
+                last = Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+            } catch (NumberFormatException e) {
+                // broken, restore from baselines
+            }
+        }
+        if (last < 0) {
+            for (File repoDir : listRepositories()) {
+                final File[] files = list(repoDir);
+                if (files.length > 0) last = Math.max(last, getSequence(files[0]));
+            }
+        }
+        final long next = last + 1;
+        write(root, file, Long.toString(next).getBytes(StandardCharsets.UTF_8));
+        return next;
+    }
+
+    /**
+     * @return baseline or null if not stored or evicted
+     */
+    byte[] load(final String repo, final String sha) throws IOException {
+        final String checkedSha = checkSha(sha);
+        synchronized (LOCK) {
+            for (File file : list(getRepoDir(repo))) {
+                if (checkedSha.equals(getSha(file))) return Files.readAllBytes(file.toPath());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return SHA of last saved baseline for repository or null if nothing stored
+     */
+    String getLatestSha(final String repo) {
+        final File[] files;
+        synchronized (LOCK) {
+            files = list(getRepoDir(repo));
+        }
+        return files.length == 0 ? null : getSha(files[0]);
+    }
+
+    /**
+     * @return sequence of baseline, zero if file has no sequence
+     */
+    private static long getSequence(final File file) {
+        final String name = file.getName();
+        final int dash = name.indexOf('-');
+        if (dash < 0) return 0;
+        try {
+            return Long.parseLong(name.substring(0, dash));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String getSha(final File file) {
+        final String name = file.getName();
+        return name.substring(name.indexOf('-') + 1, name.length() - EXTENSION.length());
+    }
+
+    /**
+     * @return baselines of repository, newest first
+     */
+    private static File[] list(final File repoDir) {
+        final File[] files = repoDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+        if (files == null) return new File[0];
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                final int bySequence = Long.compare(getSequence(o2), getSequence(o1));
+                return bySequence != 0 ? bySequence : o1.getName().compareTo(o2.getName());
+            }
+        });
+        return files;
+    }
+
+    private File[] listRepositories() {
+        final File[] dirs = root.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+        return dirs == null ? new File[0] : dirs;
+    }
+
+    private void evict(final File repoDir) throws IOException {
+        final File[] files = list(repoDir);
+        for (int i = retention; i < files.length; i++) {
+            Files.deleteIfExists(files[i].toPath());
+        }
+    }
+
+    /**
+     * Remove repositories with oldest last baseline, if there are more than allowed.
+     */
+    private void evictRepositories() throws IOException {
+        final File[] dirs = listRepositories();
+        if (dirs.length <= maxRepositories) return;
+
+        final Map<File, Long> latest = new HashMap<>();
+        for (File dir : dirs) {
+            final File[] files = list(dir);
+            latest.put(dir, files.length == 0 ? -1 : getSequence(files[0]));
+        }
+        Arrays.sort(dirs, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(latest.get(o1), latest.get(o2));
+            }
+        });
+        for (int i = 0; i < dirs.length - maxRepositories; i++) {
+            for (File file : list(dirs[i])) Files.deleteIfExists(file.toPath());
+            final File[] rest = dirs[i].listFiles();
+            if (rest == null || rest.length == 0) Files.deleteIfExists(dirs[i].toPath());
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Where time of plugin step is spent: stages (see {@link BuildStages}), workspace scan and
+ * reports parsed per format (see {@link ReportStats}). Shown as summary on build page,
+ * same numbers are published to Metrics plugin by {@link PluginMetrics#record(BuildMetricsAction)}.
+ */
+public class BuildMetricsAction implements RunAction2 {
+
+    private final String step;
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private ReportStats reports = new ReportStats();
+    private int visitedDirectories;
+    private long scanMillis;
+    private long totalMillis;
+    private transient Run run;
+
+    public BuildMetricsAction(String step) {
+        this.step = step;
+    }
+
+    void addStages(final BuildStages buildStages) {
+        stages.putAll(buildStages.getTimings());
+        totalMillis = buildStages.getTotalMillis();
+    }
+
+    void addReports(final ReportStats reports, final int visitedDirectories, final long scanMillis) {
+        this.reports = reports;
+        this.visitedDirectories = visitedDirectories;
+        this.scanMillis = scanMillis;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    /**
+     * @return time in ms by stage name
+     */
+    public Map<String, Long> getStages() {
+        return stages;
+    }
+
+    public ReportStats getReports() {
+        return reports;
+    }
+
+    public int getVisitedDirectories() {
+        return visitedDirectories;
+    }
+
+    public long getScanMillis() {
+        return scanMillis;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Coverage status metrics";
+    }
+
+    /**
+     * Only summary on build page, no link
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    public Run getRun() {
+        return run;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.ContextResettingExecutorService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stages of one build step with timings.
+ * <p>
+ * Remote stages (Sonar, GitHub) are started in background with {@link #start(String, Callable)}
+ * while step does local work (agent side report parsing) with {@link #run(String, Callable)},
+ * so step takes max of them instead of sum. Time of each stage is printed to build log.
+ * If step fails or is aborted, {@link #cancel()} interrupts background stages which are still running.
+ */
+final class BuildStages {
+
+    private static final int REMOTE_THREADS = 8;
+
+    static final ExecutorService REMOTE_EXECUTOR = new ContextResettingExecutorService(Executors.newFixedThreadPool(
+            REMOTE_THREADS, new NamingThreadFactory(new DaemonThreadFactory(), "github-pr-coverage-status-stage")));
+
+    private final PrintStream buildLog;
+    private final ExecutorService executor;
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private final List<Future<?>> started = new ArrayList<>();
+
+    BuildStages(final PrintStream buildLog, final ExecutorService executor) {
+        this.buildLog = buildLog;
+        this.executor = executor;
+    }
+
+    /**
+     * Start stage in background.
+     */
+    <T> Future<T> start(final String name, final Callable<T> stage) {
+        final Future<T> future = executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return timed(name, stage);
+            }
+        });
+        synchronized (this) {
+            started.add(future);
+        }
+        return future;
+    }
+
+    /**
+     * Run stage in current thread.
+     */
+    <T> T run(final String name, final Callable<T> stage) throws IOException, InterruptedException {
+        try {
+            return timed(name, stage);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Wait for background stage, exception of stage is thrown as is.
+     */
+    <T> T await(final Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof InterruptedException) throw new InterruptedIOException(cause.getMessage());
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Cancel background stages, running ones are interrupted. Does nothing for finished stages,
+     * so could be called in finally block of step. Blocking HTTP reads don't react on interrupt,
+     * they end by read timeout.
+     */
+    synchronized void cancel() {
+        for (Future<?> future : started) future.cancel(true);
+    }
+
+    private <T> T timed(final String name, final Callable<T> stage) throws Exception {
+        final long start = System.currentTimeMillis();
+        try {
+            return stage.call();
+        } finally {
+            final long time = System.currentTimeMillis() - start;
+            synchronized (this) {
+                final Long before = timings.get(name);
+                timings.put(name, before == null ? time : before + time);
+                buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + name + " took " + time + " ms");
+            }
+        }
+    }
+
+    /**
+     * @return time in ms of finished stages by name, in order of finish
+     */
+    synchronized Map<String, Long> getTimings() {
+        return new LinkedHashMap<>(timings);
+    }
+
+    long getTotalMillis() {
+        return System.currentTimeMillis() - startedAt;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final List<String> stages = new ArrayList<>(timings.size());
+        for (Map.Entry<String, Long> timing : timings.entrySet()) {
+            stages.add(timing.getKey() + " " + timing.getValue() + " ms");
+        }
+        return "stages: " + String.join(", ", stages) + ", total " + getTotalMillis() + " ms";
+    }
+
+}
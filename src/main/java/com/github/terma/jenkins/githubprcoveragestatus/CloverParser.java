@@ -17,12 +17,17 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
-import org.apache.commons.io.FileUtils;
-
-import java.io.File;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
+ * Streaming (StAX) parser for Clover report, only <code>/coverage/project/metrics</code> is read.
+ * <pre>
+ * &lt;metrics statements="10" coveredstatements="5" .../&gt;
+ * </pre>
  * For more info about Clover see:
  * <a href="https://answers.atlassian.com/questions/203628/clover-xml-number-of-covered-lines>
  * https://answers.atlassian.com/questions/203628/clover-xml-number-of-covered-lines</a>
@@ -33,36 +38,84 @@ import java.io.IOException;
  */
 class CloverParser implements CoverageReportParser {
 
-    private static final String TOTAL_STATEMENTS_XPATH = "/coverage/project/metrics/@statements";
-    private static final String COVER_STATEMENTS_XPATH = "/coverage/project/metrics/@coveredstatements";
+    private static final String TOTAL_STATEMENTS_ATTRIBUTE = "coverage/project/metrics@statements";
+    private static final String COVERED_STATEMENTS_ATTRIBUTE = "coverage/project/metrics@coveredstatements";
 
-    private int getByXpath(final String filePath, final String content, final String xpath) {
+    private static long getValue(final String filePath, final String value, final String attribute) {
         try {
-            return Integer.parseInt(XmlUtils.findInXml(content, xpath));
-        } catch (NumberFormatException e) {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException | NullPointerException e) {
             throw new IllegalArgumentException(
                     "Strange Clover report!\n" +
                             "File path: " + filePath + "\n" +
-                            "Can't extract float value by XPath: " + xpath + "\n" +
-                            "from:\n" + content, e);
+                            "Can't read number from attribute: " + attribute);
         }
     }
 
     @Override
-    public float get(final String cloverFilePath) {
-        final String content;
-        try {
-            content = FileUtils.readFileToString(new File(cloverFilePath));
+    public CoverageCounts get(final String cloverFilePath) {
+        try (InputStream in = ReportInput.open(cloverFilePath)) {
+            return get(cloverFilePath, in);
         } catch (IOException e) {
             throw new IllegalArgumentException(
                     "Can't read Clover report by path: " + cloverFilePath);
         }
+    }
 
-        final float statements = getByXpath(cloverFilePath, content, TOTAL_STATEMENTS_XPATH);
-        final float coveredStatements = getByXpath(cloverFilePath, content, COVER_STATEMENTS_XPATH);
+    @Override
+    public CoverageCounts get(final String cloverFilePath, final InputStream in) {
+        final String[] metrics = readProjectMetrics(cloverFilePath, in);
+        final long statements = getValue(cloverFilePath, metrics[0], TOTAL_STATEMENTS_ATTRIBUTE);
+        final long coveredStatements = getValue(cloverFilePath, metrics[1], COVERED_STATEMENTS_ATTRIBUTE);
+        final long missedStatements = Math.max(0, statements - coveredStatements);
+
+        return CoverageCounts.ofReport(coveredStatements, missedStatements)
+                .with(CoverageCounts.Type.STATEMENT, coveredStatements, missedStatements);
+    }
 
-        if (statements == 0) return 0;
-        else return coveredStatements / statements;
+    /**
+     * Single pass till <code>metrics</code> of <code>project</code>, Java Clover puts it first
+     * while PHPUnit puts it after all files, so <code>package</code> and <code>file</code> subtrees
+     * are skipped without materialization.
+     *
+     * @return statements and covered statements attributes, null if not found
+     */
+    private static String[] readProjectMetrics(final String cloverFilePath, final InputStream in) {
+        final String[] metrics = new String[2];
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlUtils.createStreamReader(in);
+            if (!"coverage".equals(XmlUtils.toRootElement(reader))) return metrics;
+
+            boolean inProject = false;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String name = reader.getLocalName();
+                    if (!inProject && "project".equals(name)) {
+                        inProject = true;
+                        continue;
+                    }
+                    if (inProject && "metrics".equals(name)) {
+                        metrics[0] = reader.getAttributeValue(null, "statements");
+                        metrics[1] = reader.getAttributeValue(null, "coveredstatements");
+                        break;
+                    }
+                    XmlUtils.skipElement(reader);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    // end of project without metrics or end of coverage
+                    break;
+                }
+            }
+            return metrics;
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(
+                    "Strange Clover report!\n" +
+                            "File path: " + cloverFilePath + "\n" +
+                            "Can't parse: " + e.getMessage(), e);
+        } finally {
+            XmlUtils.closeQuietly(reader);
+        }
     }
 
 }
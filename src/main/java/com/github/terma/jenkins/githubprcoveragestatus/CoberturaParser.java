@@ -17,53 +17,117 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
-import org.apache.commons.io.FileUtils;
-
-import java.io.File;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStream;
 
 /**
  * <a href="http://cobertura.sourceforge.net/xml/coverage-04.dtd">Coverage DTD</a>
+ * <p>
+ * Everything we need is in attributes of root element, so parser reads only
+ * <code>&lt;coverage&gt;</code> start tag and stops, rest of report is never read:
+ * <pre>
+ * &lt;coverage line-rate="0.88" branch-rate="1.0" lines-covered="32" lines-valid="36"
+ *           branches-covered="6" branches-valid="6" ...&gt;
+ * </pre>
+ * Coverage of report is always based on <code>line-rate</code> and <code>branch-rate</code>.
+ * If report has all line and branch counts they are used to weigh it against other reports
+ * and kept for details.
  */
 class CoberturaParser implements CoverageReportParser {
 
-    private static String findFirst(String string, String pattern) {
-        String result = findFirstOrNull(string, pattern);
-        if (result != null) {
-            return result;
-        } else {
-            throw new IllegalArgumentException("Can't find " + pattern + " in " + string);
+    private static float getRate(final String filePath, final String value, final String attribute) {
+        if (value == null) {
+            throw new IllegalArgumentException(
+                    "Strange Cobertura report!\n" +
+                            "File path: " + filePath + "\n" +
+                            "Can't find " + attribute + " in coverage element");
+        }
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "Strange Cobertura report!\n" +
+                            "File path: " + filePath + "\n" +
+                            "Can't extract float value of " + attribute + ": " + value);
         }
     }
 
-    private static String findFirstOrNull(String string, String pattern) {
-        Matcher matcher = Pattern.compile(pattern).matcher(string);
-        if (matcher.find()) {
-            return matcher.group(1);
-        } else {
-            return null;
+    /**
+     * @return count or -1 if absent or not a number, counts are optional
+     */
+    private static long getCount(final String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public CoverageCounts get(String coberturaFilePath) {
+        try (InputStream in = ReportInput.open(coberturaFilePath)) {
+            return get(coberturaFilePath, in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                    "Can't read Cobertura report by path: " + coberturaFilePath);
         }
     }
 
     @Override
-    public float get(String coberturaFilePath) {
+    public CoverageCounts get(final String coberturaFilePath, final InputStream in) {
+        XMLStreamReader reader = null;
         try {
-            String content = FileUtils.readFileToString(new File(coberturaFilePath));
-            float lineRate = Float.parseFloat(findFirst(content, "line-rate=['\"]([0-9.]+)['\"]"));
-            float branchRate = Float.parseFloat(findFirst(content, "branch-rate=['\"]([0-9.]+)['\"]"));
-            if (lineRate > 0 && branchRate == 0) {
-              return lineRate;
-            } else if (lineRate == 0 && branchRate > 0) {
-              return branchRate;
-            } else {
-              return lineRate / 2 + branchRate / 2;
+            reader = XmlUtils.createStreamReader(in);
+            if (!"coverage".equals(XmlUtils.toRootElement(reader))) {
+                throw new IllegalArgumentException(
+                        "Strange Cobertura report!\n" +
+                                "File path: " + coberturaFilePath + "\n" +
+                                "Root element is not coverage");
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+
+            final long linesCovered = getCount(reader.getAttributeValue(null, "lines-covered"));
+            final long linesValid = getCount(reader.getAttributeValue(null, "lines-valid"));
+            final long branchesCovered = getCount(reader.getAttributeValue(null, "branches-covered"));
+            final long branchesValid = getCount(reader.getAttributeValue(null, "branches-valid"));
+            final float lineRate = getRate(coberturaFilePath,
+                    reader.getAttributeValue(null, "line-rate"), "line-rate");
+            final float branchRate = getRate(coberturaFilePath,
+                    reader.getAttributeValue(null, "branch-rate"), "branch-rate");
+            final float ratio = getRatio(lineRate, branchRate);
+
+            if (isValid(linesCovered, linesValid) && isValid(branchesCovered, branchesValid)) {
+                return CoverageCounts.ofReport(
+                        linesCovered + branchesCovered,
+                        linesValid - linesCovered + branchesValid - branchesCovered, ratio)
+                        .with(CoverageCounts.Type.LINE, linesCovered, linesValid - linesCovered)
+                        .with(CoverageCounts.Type.BRANCH, branchesCovered, branchesValid - branchesCovered);
+            }
+            return CoverageCounts.ofRatio(ratio);
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(
+                    "Strange Cobertura report!\n" +
+                            "File path: " + coberturaFilePath + "\n" +
+                            "Can't parse: " + e.getMessage(), e);
+        } finally {
+            XmlUtils.closeQuietly(reader);
         }
     }
 
+    private static boolean isValid(final long covered, final long valid) {
+        return covered >= 0 && valid >= covered;
+    }
+
+    private static float getRatio(final float lineRate, final float branchRate) {
+        if (lineRate > 0 && branchRate == 0) {
+            return lineRate;
+        } else if (lineRate == 0 && branchRate > 0) {
+            return branchRate;
+        } else {
+            return lineRate / 2 + branchRate / 2;
+        }
+    }
 
 }
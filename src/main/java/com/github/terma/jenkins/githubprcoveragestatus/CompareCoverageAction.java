@@ -30,7 +30,6 @@ import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
 import jenkins.tasks.SimpleBuildStep;
 import org.kohsuke.github.GHCommitState;
-import org.kohsuke.github.GHPullRequestCommitDetail;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -39,23 +38,9 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-
-import javax.xml.parsers.*;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.*;
-import java.io.File;
-import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Build step to publish pull request
@@ -77,6 +62,11 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
 
     public static final String BUILD_LOG_PREFIX = "[GitHub PR Status] ";
 
+    /**
+     * Value of {@link #publishResultAs} to keep one comment per pull request
+     */
+    static final String UPDATED_COMMENT = "updatedComment";
+
     private static final long serialVersionUID = 1L;
     private String sonarLogin;
     private String sonarPassword;
@@ -85,6 +75,8 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
     private String publishResultAs;
     private String testCoverage;
     private String devCoverage;
+    private String reportRoots;
+    private String reportExcludes;
 
     @DataBoundConstructor
     public CompareCoverageAction() {
@@ -117,6 +109,24 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         this.devCoverage = devCoverage;
     }
 
+    public String getReportRoots() {
+        return reportRoots;
+    }
+
+    @DataBoundSetter
+    public void setReportRoots(String reportRoots) {
+        this.reportRoots = reportRoots;
+    }
+
+    public String getReportExcludes() {
+        return reportExcludes;
+    }
+
+    @DataBoundSetter
+    public void setReportExcludes(String reportExcludes) {
+        this.reportExcludes = reportExcludes;
+    }
+
     public String getSonarLogin() {
         return sonarLogin;
     }
@@ -154,7 +164,6 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         this.jacocoCoverageCounter = jacocoCoverageCounter;
     }
 
-    // todo show message that addition comment in progress as it could take a while
     @SuppressWarnings("NullableProblems")
     @Override
     public void perform(
@@ -174,48 +183,99 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
 
         final SettingsRepository settingsRepository = ServiceRegistry.getSettingsRepository();
 
+        final BuildStages stages = new BuildStages(buildLog, BuildStages.REMOTE_EXECUTOR);
+        final BuildMetricsAction metrics = new BuildMetricsAction(DescriptorImpl.DISPLAY_NAME);
         final int prId = PrIdAndUrlUtils.getPrId(scmVars, build, listener);
         final String gitUrl = PrIdAndUrlUtils.getGitUrl(scmVars, build, listener);
+        final String gitHubUrl = PrIdAndUrlUtils.getGitUrl(scmVars, build, listener, false);
 
-        buildLog.println(BUILD_LOG_PREFIX + "getting master coverage...");
-        MasterCoverageRepository masterCoverageRepository = ServiceRegistry
-                .getMasterCoverageRepository(buildLog, sonarLogin, sonarPassword);
-        final GHRepository gitHubRepository = ServiceRegistry.getPullRequestRepository().getGitHubRepository(PrIdAndUrlUtils.getGitUrl(scmVars, build, listener, false));
-        final float masterCoverage = masterCoverageRepository.get(gitUrl);
-        buildLog.println(BUILD_LOG_PREFIX + "master coverage: " + masterCoverage);
-
-        buildLog.println(BUILD_LOG_PREFIX + "collecting coverage...");
-        final float coverage = ServiceRegistry.getCoverageRepository(settingsRepository.isDisableSimpleCov(),
-                jacocoCoverageCounter).get(workspace);
-        buildLog.println(BUILD_LOG_PREFIX + "build coverage: " + coverage);
-
-
-
-
-        Map<String, String> coverageResult = new HashMap<>();
-        if (Percent.roundFourAfterDigit(coverage) < Percent.roundFourAfterDigit(masterCoverage)) {
+        try {
+            // master coverage and GitHub repository are remote, get them while reports are parsed on agent
+            buildLog.println(BUILD_LOG_PREFIX + "getting master coverage...");
+            final MasterCoverageRepository masterCoverageRepository = ServiceRegistry
+                    .getMasterCoverageRepository(buildLog, sonarLogin, sonarPassword);
+            final Future<Float> masterCoverageFuture = stages.start("master coverage", new Callable<Float>() {
+                @Override
+                public Float call() {
+                    return masterCoverageRepository.get(gitUrl);
+                }
+            });
+            final Future<GHRepository> gitHubRepositoryFuture = stages.start("GitHub repository", new Callable<GHRepository>() {
+                @Override
+                public GHRepository call() throws IOException {
+                    return ServiceRegistry.getPullRequestRepository().getGitHubRepository(gitHubUrl);
+                }
+            });
+
+            buildLog.println(BUILD_LOG_PREFIX + "collecting coverage...");
+            final CoverageRepository coverageRepository = ServiceRegistry.getCoverageRepository(settingsRepository.isDisableSimpleCov(),
+                    jacocoCoverageCounter, settingsRepository.getParseParallelism(), reportRoots, reportExcludes, buildLog, metrics);
+            final float coverage;
+            final GHRepository gitHubRepository;
+            final float masterCoverage;
             try {
-                FilePath dev = workspace.child(getDevCoverage());
-                FilePath test = workspace.child(getTestCoverage());
-                coverageResult = getCoverageDetails(dev, test, buildLog);
-            } catch (Exception e) {
-                e.printStackTrace();
+                coverage = stages.run("build coverage", new Callable<Float>() {
+                    @Override
+                    public Float call() throws IOException, InterruptedException {
+                        return coverageRepository.get(workspace);
+                    }
+                });
+                buildLog.println(BUILD_LOG_PREFIX + "build coverage: " + coverage);
+
+                gitHubRepository = stages.await(gitHubRepositoryFuture);
+                masterCoverage = stages.await(masterCoverageFuture);
+                buildLog.println(BUILD_LOG_PREFIX + "master coverage: " + masterCoverage);
+            } finally {
+                // stop remote stages which are still running if step failed or was aborted
+                stages.cancel();
             }
-        }
-        final Message message = new Message(coverage, masterCoverage, coverageResult);
-        buildLog.println(BUILD_LOG_PREFIX + message.forBuild());
-        ReportCoverageAction coverageAction = new ReportCoverageAction(message.forBuild());
-        build.addAction(coverageAction);
-        final String buildUrl = Utils.getBuildUrl(build, listener)+"/"+coverageAction.getUrlName();
-
-        String jenkinsUrl = settingsRepository.getJenkinsUrl();
-        if (jenkinsUrl == null) jenkinsUrl = Utils.getJenkinsUrlFromBuildUrl(buildUrl);
-        if ("comment".equalsIgnoreCase(publishResultAs)) {
-            buildLog.println(BUILD_LOG_PREFIX + "publishing result as comment");
-            publishComment(message, buildUrl, jenkinsUrl, settingsRepository, gitHubRepository, prId, listener);
-        } else {
-            buildLog.println(BUILD_LOG_PREFIX + "publishing result as status check");
-            publishStatusCheck(message, gitHubRepository, prId, masterCoverage, coverage, buildUrl, listener);
+            buildLog.println(BUILD_LOG_PREFIX + stages);
+
+            CoverageDiff coverageDiff = CoverageDiff.empty();
+            if (Percent.roundFourAfterDigit(coverage) < Percent.roundFourAfterDigit(masterCoverage)) {
+                try {
+                    coverageDiff = stages.run("coverage diff", new Callable<CoverageDiff>() {
+                        @Override
+                        public CoverageDiff call() throws IOException, InterruptedException {
+                            if (getDevCoverage() != null) {
+                                FilePath dev = workspace.child(getDevCoverage());
+                                FilePath test = workspace.child(getTestCoverage());
+                                return getCoverageDetails(workspace, dev, test, buildLog);
+                            } else if (getTestCoverage() != null) {
+                                final String repoUrl = PrIdAndUrlUtils.getGitUrl(scmVars, build, listener, false);
+                                return getCoverageDetailsByBaseline(
+                                        workspace, workspace.child(getTestCoverage()), gitHubRepository, prId, repoUrl, buildLog);
+                            }
+                            return CoverageDiff.empty();
+                        }
+                    });
+                } catch (Exception e) {
+                    e.printStackTrace(buildLog);
+                }
+            }
+            final Message message = new Message(coverage, masterCoverage, coverageDiff);
+            buildLog.println(BUILD_LOG_PREFIX + message.forBuild());
+            ReportCoverageAction coverageAction = new ReportCoverageAction(message.forBuild(), coverageDiff);
+            build.addAction(coverageAction);
+            final String buildUrl = Utils.getBuildUrl(build, listener)+"/"+coverageAction.getUrlName();
+
+            String jenkinsUrl = settingsRepository.getJenkinsUrl();
+            if (jenkinsUrl == null) jenkinsUrl = Utils.getJenkinsUrlFromBuildUrl(buildUrl);
+            if ("comment".equalsIgnoreCase(publishResultAs)) {
+                buildLog.println(BUILD_LOG_PREFIX + "publishing result as comment");
+                publishComment(message, buildUrl, jenkinsUrl, settingsRepository, gitHubRepository, prId, false, build, listener);
+            } else if (UPDATED_COMMENT.equalsIgnoreCase(publishResultAs)) {
+                buildLog.println(BUILD_LOG_PREFIX + "publishing result as updated comment");
+                publishComment(message, buildUrl, jenkinsUrl, settingsRepository, gitHubRepository, prId, true, build, listener);
+            } else {
+                buildLog.println(BUILD_LOG_PREFIX + "publishing result as status check");
+                publishStatusCheck(message, gitHubRepository, prId, masterCoverage, coverage, buildUrl, build, listener);
+            }
+        } finally {
+            // partial timings of failed step are as useful as of passed one
+            metrics.addStages(stages);
+            build.addAction(metrics);
+            PluginMetrics.record(metrics);
         }
     }
 
@@ -224,9 +284,11 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
             String buildUrl,
             String jenkinsUrl,
             SettingsRepository settingsRepository,
-            GHRepository gitHubRepository,
-            int prId,
-            TaskListener listener
+            final GHRepository gitHubRepository,
+            final int prId,
+            final boolean update,
+            final Run build,
+            final TaskListener listener
     ) {
         try {
             final String comment = message.forComment(
@@ -235,7 +297,23 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
                     settingsRepository.getYellowThreshold(),
                     settingsRepository.getGreenThreshold(),
                     settingsRepository.isPrivateJenkinsPublicGitHub());
-            ServiceRegistry.getPullRequestRepository().comment(gitHubRepository, prId, comment);
+            ServiceRegistry.getPublishQueue().submit(new GitHubPublishQueue.Publication(
+                    "comment " + gitHubRepository.getFullName() + "#" + prId) {
+                @Override
+                void publish() throws Exception {
+                    if (update) {
+                        ServiceRegistry.getPullRequestRepository().upsertComment(
+                                gitHubRepository, prId, Message.COMMENT_MARKER, Message.COMMENT_MARKER + "\n" + comment);
+                    } else {
+                        ServiceRegistry.getPullRequestRepository().comment(gitHubRepository, prId, comment);
+                    }
+                }
+
+                @Override
+                void failed(Exception e) {
+                    reportPublishFailure(build, listener, "Couldn't add comment to pull request #" + prId + "!", e);
+                }
+            });
         } catch (Exception ex) {
             PrintWriter pw = listener.error("Couldn't add comment to pull request #" + prId + "!");
             ex.printStackTrace(pw);
@@ -243,13 +321,14 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
     }
 
     private void publishStatusCheck(
-            Message message,
-            GHRepository gitHubRepository,
-            int prId,
-            float targetCoverage,
-            float coverage,
-            String buildUrl,
-            TaskListener listener
+            final Message message,
+            final GHRepository gitHubRepository,
+            final int prId,
+            final float targetCoverage,
+            final float coverage,
+            final String buildUrl,
+            final Run build,
+            final TaskListener listener
     ) {
         try {
             listener.getLogger().println(
@@ -267,20 +346,47 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
                 "[debug] Mark PR as failed? " +
                 String.valueOf(Percent.roundFourAfterDigit(coverage) < Percent.roundFourAfterDigit(targetCoverage))
             );
-            List<GHPullRequestCommitDetail> commits = gitHubRepository.getPullRequest(prId).listCommits().asList();
-            ServiceRegistry.getPullRequestRepository().createCommitStatus(
-                    gitHubRepository,
-                    commits.get(commits.size() - 1).getSha(),
-                    Percent.roundFourAfterDigit(coverage) < Percent.roundFourAfterDigit(targetCoverage) ? GHCommitState.FAILURE : GHCommitState.SUCCESS,
-                    buildUrl,
-                    message.forStatusCheck()
-            );
+            final String buildSha = PrIdAndUrlUtils.getPrHeadSha(scmVars, build, listener);
+            if (buildSha == null) {
+                listener.getLogger().println(BUILD_LOG_PREFIX + "no commit in build, use PR head");
+            }
+            ServiceRegistry.getPublishQueue().submit(new GitHubPublishQueue.Publication("status " + gitHubRepository.getFullName()
+                    + (buildSha != null ? "@" + buildSha : "#" + prId)) {
+                @Override
+                void publish() throws Exception {
+                    final String sha = buildSha != null ? buildSha
+                            : ServiceRegistry.getPullRequestRepository().getHeadSha(gitHubRepository, prId);
+                    ServiceRegistry.getPullRequestRepository().createCommitStatus(
+                            gitHubRepository,
+                            sha,
+                            Percent.roundFourAfterDigit(coverage) < Percent.roundFourAfterDigit(targetCoverage) ? GHCommitState.FAILURE : GHCommitState.SUCCESS,
+                            buildUrl,
+                            message.forStatusCheck()
+                    );
+                }
+
+                @Override
+                void failed(Exception e) {
+                    reportPublishFailure(build, listener, "Couldn't add status check to pull request #" + prId + "!", e);
+                }
+            });
         } catch (Exception e) {
             PrintWriter pw = listener.error("Couldn't add status check to pull request #" + prId + "!");
             e.printStackTrace(pw);
         }
     }
 
+    /**
+     * Publishing fails in background, when build could be finished and its log closed.
+     * Then failure is only in Jenkins log, see {@link GitHubPublishQueue}.
+     */
+    private static void reportPublishFailure(
+            final Run build, final TaskListener listener, final String message, final Exception e) {
+        if (!build.isBuilding()) return;
+        PrintWriter pw = listener.error(message);
+        e.printStackTrace(pw);
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
@@ -289,10 +395,12 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
     @Extension
     public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
 
+        static final String DISPLAY_NAME = "Publish coverage to GitHub";
+
         @Override
         @NonNull
         public String getDisplayName() {
-            return "Publish coverage to GitHub";
+            return DISPLAY_NAME;
         }
 
         @Override
@@ -301,8 +409,7 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         }
 
     }
-    private static Map<String, String> getCoverageDetails(FilePath dev, FilePath test, PrintStream log) throws IOException, InterruptedException {
-        Map<String, String> coverageDetails = new HashMap<>();
+    private static CoverageDiff getCoverageDetails(FilePath workspace, FilePath dev, FilePath test, PrintStream log) throws IOException, InterruptedException {
         if (!dev.exists() || !test.exists()){
             log.println("Coverage file(s) does not exists. failed to run comparison");
             log.println("Dev coverage file path: "+ dev);
@@ -313,40 +420,59 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
             if (test.exists()){
                 log.println("test file exists");
             }
-            return coverageDetails;
+            return CoverageDiff.empty();
         }
+        final CoverageDiff coverageDiff = workspace.act(new CoverageDiffCallable(dev.getRemote(), test.getRemote()));
+        printCoverageDetails(coverageDiff, log);
+        return coverageDiff;
+    }
+
+    /**
+     * Compare test report with master baseline of merge base commit recorded by {@link MasterCoverageAction},
+     * if there is no such baseline latest one for repository is used.
+     */
+    private static CoverageDiff getCoverageDetailsByBaseline(
+            FilePath workspace, FilePath test, GHRepository gitHubRepository, int prId, String repoUrl, PrintStream log
+    ) throws IOException, InterruptedException {
+        if (!test.exists()) {
+            log.println("Test coverage file does not exists. failed to run comparison");
+            log.println("Test coverage file path: " + test);
+            return CoverageDiff.empty();
+        }
+
+        final BaselineStore baselineStore = ServiceRegistry.getBaselineStore();
+        String sha = null;
         try {
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            CoberturaHandler handlerDev = new CoberturaHandler();
-            CoberturaHandler handlerTest = new CoberturaHandler();
-            saxParser.parse(dev.read(), handlerDev);
-            Map<String, Coverage> coverageDev = handlerDev.getCoverageDetails();
-            saxParser.parse(test.read(), handlerTest);
-            Map<String, Coverage> coverageTest = handlerTest.getCoverageDetails();
-            for (Map.Entry<String, Coverage> entry : coverageTest.entrySet()) {
-                Coverage entryDev = coverageDev.getOrDefault(entry.getKey(),null);
-                if (entryDev != null && !Objects.equals(entryDev.lineRate, entry.getValue().lineRate) && Float.parseFloat(entryDev.lineRate) > Float.parseFloat(entry.getValue().lineRate)){
-                    coverageDetails.put(entry.getKey(), String.format("%.4f", (Float.parseFloat(entryDev.lineRate) - Float.parseFloat(entry.getValue().lineRate)) * 100) + "%");
-                    log.println(entry.getKey() + " coverage: -" + String.format("%.4f", (Float.parseFloat(entryDev.lineRate) - Float.parseFloat(entry.getValue().lineRate)) * 100) + "%");
-                    for (Map.Entry<String, String> line : entry.getValue().lines.entrySet()){
-                        if (line.getValue().equals("0")){
-                            String devLine = entryDev.lines.getOrDefault(line.getKey(), "0");
-                            if (!devLine.equals("0")){
-                                log.println("Line: " + line.getKey());
-                            }
-                        }
-                    }
-                }
-                else if (entryDev == null && Objects.equals(entry.getValue().lineRate, "0.0")){
-                    coverageDetails.put(entry.getKey(), "0.0 %");
-                    log.println(entry.getKey() + " coverage: 0.0%");
+            sha = ServiceRegistry.getPullRequestRepository().getMergeBase(gitHubRepository, prId);
+        } catch (IOException e) {
+            log.println("Can't find merge base of pull request #" + prId + ": " + e.getMessage());
+        }
+        byte[] baseline = sha != null ? baselineStore.load(repoUrl, sha) : null;
+        if (baseline == null) {
+            final String latestSha = baselineStore.getLatestSha(repoUrl);
+            if (latestSha == null) {
+                log.println("No master baseline for " + repoUrl + ", make sure that you have run build with step: "
+                        + MasterCoverageAction.DISPLAY_NAME + " and baselineReport");
+                return CoverageDiff.empty();
+            }
+            log.println("No master baseline for merge base " + sha + ", use latest " + latestSha);
+            sha = latestSha;
+            baseline = baselineStore.load(repoUrl, sha);
+            if (baseline == null) return CoverageDiff.empty();
+        }
+        log.println("Compare with master baseline " + sha);
 
-                }
+        final CoverageDiff coverageDiff = workspace.act(new CoverageDiffCallable(baseline, test.getRemote()));
+        printCoverageDetails(coverageDiff, log);
+        return coverageDiff;
+    }
+
+    private static void printCoverageDetails(CoverageDiff coverageDiff, PrintStream log) {
+        for (CoverageDiff.FileDiff file : coverageDiff.getFiles()) {
+            log.println(file.getFile() + " coverage: -" + file.getChange());
+            if (file.getUncoveredLines().length > 0) {
+                log.println("Lines: " + file.getUncoveredLinesAsString());
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return coverageDetails;
     }
 }
@@ -29,6 +29,10 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -78,7 +82,7 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
         return DESCRIPTOR.isUseSonarForMasterCoverage();
     }
 
-    public static void setMasterCoverage(final String repo, final float coverage) {
+    public static void setMasterCoverage(final String repo, final float coverage) throws IOException {
         DESCRIPTOR.set(repo, coverage);
     }
 
@@ -93,9 +97,15 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
         private static final int DEFAULT_YELLOW_THRESHOLD = 80;
         private static final int DEFAULT_GREEN_THRESHOLD = 90;
 
+        /**
+         * Only to read configuration saved by old versions, migrated to {@link MasterCoverageStore} on first access.
+         */
         private final Map<String, Float> coverageByRepo = new ConcurrentHashMap<>();
+        private transient volatile MasterCoverageStore masterCoverageStore;
 
         private boolean disableSimpleCov;
+        private int parseParallelism;
+        private int baselineRetention;
         private String gitHubApiUrl;
         private String personalAccessToken;
         private String jenkinsUrl;
@@ -120,12 +130,35 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
 
         @NonNull
         public Map<String, Float> getCoverageByRepo() {
-            return coverageByRepo;
+            return getMasterCoverageStore().getAll();
         }
 
-        public void set(String repo, float coverage) {
-            coverageByRepo.put(repo, coverage);
-            save();
+        public void set(String repo, float coverage) throws IOException {
+            getMasterCoverageStore().put(repo, coverage);
+        }
+
+        private MasterCoverageStore getMasterCoverageStore() {
+            MasterCoverageStore store = masterCoverageStore;
+            if (store != null) return store;
+            synchronized (this) {
+                if (masterCoverageStore == null) {
+                    store = new MasterCoverageStore(
+                            new File(Jenkins.get().getRootDir(), "github-pr-coverage-status/master-coverage.log"));
+                    try {
+                        store.load();
+                        if (!coverageByRepo.isEmpty()) {
+                            store.putAllAbsent(coverageByRepo);
+                            store.compact();
+                            coverageByRepo.clear();
+                            save();
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Can't load master coverage from " + store, e);
+                    }
+                    masterCoverageStore = store;
+                }
+                return masterCoverageStore;
+            }
         }
 
         @Override
@@ -163,6 +196,16 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
             return disableSimpleCov;
         }
 
+        @Override
+        public int getParseParallelism() {
+            return parseParallelism;
+        }
+
+        @Override
+        public int getBaselineRetention() {
+            return baselineRetention;
+        }
+
         @Override
         public String getSonarUrl() {
             return sonarUrl;
@@ -197,6 +240,8 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
             privateJenkinsPublicGitHub = BooleanUtils.toBoolean(formData.getString("privateJenkinsPublicGitHub"));
             useSonarForMasterCoverage = BooleanUtils.toBoolean(formData.getString("useSonarForMasterCoverage"));
             disableSimpleCov = BooleanUtils.toBoolean(formData.getString("disableSimpleCov"));
+            parseParallelism = Math.max(0, NumberUtils.toInt(formData.getString("parseParallelism"), 0));
+            baselineRetention = Math.max(0, NumberUtils.toInt(formData.getString("baselineRetention"), 0));
             sonarUrl = StringUtils.trimToNull(formData.getString("sonarUrl"));
             sonarToken = Secret.toString(Secret.fromString(
                     StringUtils.trimToNull(formData.getString("sonarToken"))));
@@ -204,6 +249,8 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
             sonarPassword = Secret.toString(Secret.fromString(
                     StringUtils.trimToNull(formData.getString("sonarPassword"))));
             save();
+            // clients for old URL or token are not needed anymore
+            ServiceRegistry.getGitHubClientCache().invalidate();
             return super.configure(req, formData);
         }
 
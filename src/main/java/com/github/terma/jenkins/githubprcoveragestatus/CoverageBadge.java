@@ -0,0 +1,141 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SVG coverage badge served by {@link CoverageStatusIconAction}.
+ * <p>
+ * Badge is embedded into each PR comment, so it's requested by every page load of PR (through GitHub camo proxy).
+ * Template is read once, rendered badges are kept in small LRU cache by coverage, master coverage and thresholds
+ * together with strong ETag computed from content, so repeated request costs map lookup
+ * and revalidation costs no body at all.
+ */
+final class CoverageBadge {
+
+    static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final String TEMPLATE_PATH = "/com/github/terma/jenkins/githubprcoveragestatus/Icon/icon.svg";
+
+    static final String COLOR_RED = "#b94947";
+    static final String COLOR_YELLOW = "#F89406";
+    static final String COLOR_GREEN = "#97CA00";
+
+    static final CoverageBadge SHARED = new CoverageBadge(loadTemplate(), DEFAULT_CACHE_SIZE);
+
+    /**
+     * Rendered badge.
+     */
+    static final class Rendered {
+        private final String svg;
+        private final String etag;
+
+        private Rendered(String svg, String etag) {
+            this.svg = svg;
+            this.etag = etag;
+        }
+
+        String getSvg() {
+            return svg;
+        }
+
+        /**
+         * @return quoted strong ETag
+         */
+        String getEtag() {
+            return etag;
+        }
+    }
+
+    private final String template;
+    private final Map<String, Rendered> cache;
+
+    CoverageBadge(final String template, final int cacheSize) {
+        this.template = template;
+        this.cache = new LinkedHashMap<String, Rendered>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Rendered> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    static String loadTemplate() {
+        try (InputStream in = CoverageBadge.class.getResourceAsStream(TEMPLATE_PATH)) {
+            if (in == null) throw new IllegalStateException("No badge template " + TEMPLATE_PATH);
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read badge template " + TEMPLATE_PATH, e);
+        }
+    }
+
+    Rendered get(final float coverage, final float masterCoverage, final int yellowThreshold, final int greenThreshold) {
+        final String key = coverage + "/" + masterCoverage + "/" + yellowThreshold + "/" + greenThreshold;
+        synchronized (cache) {
+            final Rendered rendered = cache.get(key);
+            if (rendered != null) return rendered;
+        }
+        final Rendered rendered = render(coverage, masterCoverage, yellowThreshold, greenThreshold);
+        synchronized (cache) {
+            cache.put(key, rendered);
+        }
+        return rendered;
+    }
+
+    Rendered render(final float coverage, final float masterCoverage, final int yellowThreshold, final int greenThreshold) {
+        final Message message = new Message(coverage, masterCoverage);
+        String svg = StringUtils.replace(template, "{{ message }}", message.forIcon());
+
+        final int coveragePercent = Percent.of(coverage);
+        final String color;
+        if (coveragePercent < yellowThreshold) color = COLOR_RED;
+        else if (coveragePercent < greenThreshold) color = COLOR_YELLOW;
+        else color = COLOR_GREEN;
+        svg = StringUtils.replace(svg, "{{ color }}", color);
+
+        return new Rendered(svg, etag(svg));
+    }
+
+    private static String etag(final String svg) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(svg.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder etag = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) etag.append(String.format("%02x", digest[i]));
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact binary form of {@link LineCoverage} which is kept as master baseline
+ * in {@link BaselineStore}, so pull request could be compared with master without master report.
+ * <pre>
+ * gzip(
+ *   int magic, byte version, int files,
+ *   files * (UTF name, long[] relevant lines, long[] covered lines)
+ * )
+ * </pre>
+ * Lines are {@link BitSet#toLongArray()} prefixed by length.
+ */
+final class CoverageBaseline {
+
+    private static final int MAGIC = 0x47505243;
+    private static final byte VERSION = 1;
+
+    private CoverageBaseline() {
+        throw new UnsupportedOperationException("Util class!");
+    }
+
+    static byte[] write(final LineCoverage coverage) throws IOException {
+        final FileIds ids = coverage.getIds();
+        int files = 0;
+        for (int id = 0; id < ids.size(); id++) {
+            if (coverage.has(id)) files++;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(files);
+            for (int id = 0; id < ids.size(); id++) {
+                if (!coverage.has(id)) continue;
+                out.writeUTF(ids.getName(id));
+                writeLines(out, coverage.getRelevant(id));
+                writeLines(out, coverage.getCovered(id));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeLines(final DataOutputStream out, final BitSet lines) throws IOException {
+        final long[] words = lines.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) out.writeLong(word);
+    }
+
+    /**
+     * @param ids - dictionary shared with report which will be compared with baseline
+     */
+    static LineCoverage read(final byte[] baseline, final FileIds ids) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(baseline)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a coverage baseline!");
+            final byte version = in.readByte();
+            if (version != VERSION) throw new IOException("Unsupported coverage baseline version: " + version);
+
+            final LineCoverage coverage = new LineCoverage(ids);
+            final int files = in.readInt();
+            for (int i = 0; i < files; i++) {
+                final int id = ids.intern(in.readUTF());
+                coverage.set(id, readLines(in), readLines(in));
+            }
+            return coverage;
+        }
+    }
+
+    private static BitSet readLines(final DataInputStream in) throws IOException {
+        final long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+        return BitSet.valueOf(words);
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Covered and missed counts of one or many coverage reports.
+ * <p>
+ * Each report contributes counts of its main counter (configured Jacoco counter, Clover statements, etc.)
+ * which are used to compute coverage, so big modules weigh more than small ones.
+ * Counts of other counter types are kept for details. Instances are cheap to merge
+ * and small enough to be sent from agent as is.
+ * <p>
+ * Some report formats compute coverage of report in own way (Cobertura takes average of line and branch rate),
+ * such report keeps its coverage and its counts only weigh it against other reports.
+ * <p>
+ * Some report formats could provide only ratio. If at least one such report is merged,
+ * coverage falls back to average of reports ratio as it's not possible to weigh them.
+ */
+final class CoverageCounts implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    enum Type {
+        INSTRUCTION, BRANCH, LINE, COMPLEXITY, METHOD, CLASS, STATEMENT;
+
+        /**
+         * @return type or null if unknown
+         */
+        static Type find(final String name) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(name)) return type;
+            }
+            return null;
+        }
+    }
+
+    private final long[] covered = new long[Type.values().length];
+    private final long[] missed = new long[Type.values().length];
+
+    private long mainCovered;
+    private long mainMissed;
+    private double weightedCovered;
+    private int reports;
+    private int ratioOnlyReports;
+    private double ratioSum;
+
+    /**
+     * Empty, use {@link #merge(CoverageCounts)} to sum reports.
+     */
+    CoverageCounts() {
+    }
+
+    /**
+     * Counts of one report.
+     *
+     * @param covered - covered items of main counter
+     * @param missed  - missed items of main counter
+     */
+    static CoverageCounts ofReport(final long covered, final long missed) {
+        final CoverageCounts counts = new CoverageCounts();
+        counts.mainCovered = covered;
+        counts.mainMissed = missed;
+        counts.weightedCovered = covered;
+        counts.reports = 1;
+        counts.ratioSum = ratio(covered, missed);
+        return counts;
+    }
+
+    /**
+     * Counts of one report which coverage is not <code>covered / (covered + missed)</code>.
+     *
+     * @param ratio - coverage of report, counts are used only as its weight
+     */
+    static CoverageCounts ofReport(final long covered, final long missed, final float ratio) {
+        final CoverageCounts counts = ofReport(covered, missed);
+        counts.weightedCovered = (double) ratio * (covered + missed);
+        counts.ratioSum = ratio;
+        return counts;
+    }
+
+    /**
+     * Report which doesn't provide counts, only coverage ratio.
+     */
+    static CoverageCounts ofRatio(final float ratio) {
+        final CoverageCounts counts = new CoverageCounts();
+        counts.reports = 1;
+        counts.ratioOnlyReports = 1;
+        counts.ratioSum = ratio;
+        return counts;
+    }
+
+    /**
+     * Add details for counter type, doesn't affect coverage.
+     */
+    CoverageCounts with(final Type type, final long covered, final long missed) {
+        this.covered[type.ordinal()] += covered;
+        this.missed[type.ordinal()] += missed;
+        return this;
+    }
+
+    CoverageCounts merge(final CoverageCounts other) {
+        for (int i = 0; i < covered.length; i++) {
+            covered[i] += other.covered[i];
+            missed[i] += other.missed[i];
+        }
+        mainCovered += other.mainCovered;
+        mainMissed += other.mainMissed;
+        weightedCovered += other.weightedCovered;
+        reports += other.reports;
+        ratioOnlyReports += other.ratioOnlyReports;
+        ratioSum += other.ratioSum;
+        return this;
+    }
+
+    private static double ratio(final long covered, final long missed) {
+        final long total = covered + missed;
+        return total == 0 ? 0 : (double) covered / total;
+    }
+
+    /**
+     * @return coverage from 0 to 1
+     */
+    float getCoverage() {
+        if (reports == 0) return 0;
+        if (ratioOnlyReports > 0) return (float) (ratioSum / reports);
+        final long total = mainCovered + mainMissed;
+        return total == 0 ? 0 : (float) (weightedCovered / total);
+    }
+
+    long getCovered() {
+        return mainCovered;
+    }
+
+    long getMissed() {
+        return mainMissed;
+    }
+
+    long getCovered(final Type type) {
+        return covered[type.ordinal()];
+    }
+
+    long getMissed(final Type type) {
+        return missed[type.ordinal()];
+    }
+
+    int getReports() {
+        return reports;
+    }
+
+    /**
+     * @return true if coverage is weighted by counts of all reports
+     */
+    boolean isWeighted() {
+        return ratioOnlyReports == 0;
+    }
+
+    /**
+     * Binary form for {@link ParseCache}, counter types are written by name so
+     * adding new type doesn't break already written counts.
+     */
+    void write(final DataOutput out) throws IOException {
+        out.writeLong(mainCovered);
+        out.writeLong(mainMissed);
+        out.writeDouble(weightedCovered);
+        out.writeInt(reports);
+        out.writeInt(ratioOnlyReports);
+        out.writeDouble(ratioSum);
+        out.writeInt(covered.length);
+        for (Type type : Type.values()) {
+            out.writeUTF(type.name());
+            out.writeLong(covered[type.ordinal()]);
+            out.writeLong(missed[type.ordinal()]);
+        }
+    }
+
+    static CoverageCounts read(final DataInput in) throws IOException {
+        final CoverageCounts counts = new CoverageCounts();
+        counts.mainCovered = in.readLong();
+        counts.mainMissed = in.readLong();
+        counts.weightedCovered = in.readDouble();
+        counts.reports = in.readInt();
+        counts.ratioOnlyReports = in.readInt();
+        counts.ratioSum = in.readDouble();
+        final int types = in.readInt();
+        for (int i = 0; i < types; i++) {
+            final Type type = Type.find(in.readUTF());
+            final long typeCovered = in.readLong();
+            final long typeMissed = in.readLong();
+            if (type != null) counts.with(type, typeCovered, typeMissed);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "CoverageCounts{reports=" + reports + ", covered=" + mainCovered + ", missed=" + mainMissed
+                + ", ratioOnlyReports=" + ratioOnlyReports + "}";
+    }
+
+}
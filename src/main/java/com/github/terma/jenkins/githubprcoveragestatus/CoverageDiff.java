@@ -0,0 +1,185 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Files which lost coverage in test (pull request) report compared to dev (target branch) report.
+ * Compact and serializable, so could be kept in build and sent from agent.
+ */
+public final class CoverageDiff implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final CoverageDiff EMPTY = new CoverageDiff(Collections.<FileDiff>emptyList());
+
+    private final List<FileDiff> files;
+
+    CoverageDiff(final List<FileDiff> files) {
+        this.files = files;
+    }
+
+    static CoverageDiff empty() {
+        return EMPTY;
+    }
+
+    /**
+     * File is in result if:
+     * <ul>
+     * <li>its line rate in test is lower than in dev, newly uncovered lines are lines covered in dev
+     * but not covered in test</li>
+     * <li>or it's only in test and has no covered lines at all</li>
+     * </ul>
+     * Rates are compared on counts, so equal coverage is never reported because of float rounding.
+     *
+     * @param dev  - coverage of target branch
+     * @param test - coverage of pull request, has to use the same {@link FileIds} as dev
+     * @return files sorted by name
+     */
+    static CoverageDiff compare(final LineCoverage dev, final LineCoverage test) {
+        if (dev.getIds() != test.getIds()) {
+            throw new IllegalArgumentException("Can't compare coverage with different file ids!");
+        }
+
+        final FileIds ids = test.getIds();
+        final List<FileDiff> files = new ArrayList<>();
+        for (int id = 0; id < ids.size(); id++) {
+            if (!test.has(id)) continue;
+
+            final BitSet testRelevant = test.getRelevant(id);
+            final BitSet testCovered = test.getCovered(id);
+            final long testLines = testRelevant.cardinality();
+            final long testHits = testCovered.cardinality();
+
+            if (dev.has(id)) {
+                final long devLines = dev.getRelevant(id).cardinality();
+                final long devHits = dev.getCovered(id).cardinality();
+                // devHits / devLines > testHits / testLines
+                if (devHits * testLines > testHits * devLines) {
+                    final BitSet uncovered = (BitSet) dev.getCovered(id).clone();
+                    uncovered.and(testRelevant);
+                    uncovered.andNot(testCovered);
+                    files.add(new FileDiff(ids.getName(id), false,
+                            rate(devHits, devLines), rate(testHits, testLines), uncovered.stream().toArray()));
+                }
+            } else if (testLines > 0 && testHits == 0) {
+                files.add(new FileDiff(ids.getName(id), true,
+                        0, 0, testRelevant.stream().toArray()));
+            }
+        }
+
+        if (files.isEmpty()) return EMPTY;
+        Collections.sort(files, new Comparator<FileDiff>() {
+            @Override
+            public int compare(FileDiff o1, FileDiff o2) {
+                return o1.file.compareTo(o2.file);
+            }
+        });
+        return new CoverageDiff(files);
+    }
+
+    private static float rate(final long hits, final long lines) {
+        return lines == 0 ? 0 : (float) hits / lines;
+    }
+
+    public List<FileDiff> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    public static final class FileDiff implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String file;
+        private final boolean newFile;
+        private final float devRate;
+        private final float testRate;
+        private final int[] uncoveredLines;
+
+        FileDiff(final String file, final boolean newFile,
+                 final float devRate, final float testRate, final int[] uncoveredLines) {
+            this.file = file;
+            this.newFile = newFile;
+            this.devRate = devRate;
+            this.testRate = testRate;
+            this.uncoveredLines = uncoveredLines;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return true if file is not in dev report and not covered at all
+         */
+        public boolean isNewFile() {
+            return newFile;
+        }
+
+        public float getDevRate() {
+            return devRate;
+        }
+
+        public float getTestRate() {
+            return testRate;
+        }
+
+        /**
+         * @return how much line rate dropped, in percents, always positive
+         */
+        public String getChange() {
+            return newFile ? "0.0 %" : String.format("%.4f", (devRate - testRate) * 100) + "%";
+        }
+
+        /**
+         * @return sorted line numbers, don't modify
+         */
+        public int[] getUncoveredLines() {
+            return uncoveredLines;
+        }
+
+        /**
+         * Example: 3-5, 9, 12-13
+         */
+        public String getUncoveredLinesAsString() {
+            final StringBuilder result = new StringBuilder();
+            int i = 0;
+            while (i < uncoveredLines.length) {
+                int j = i;
+                while (j + 1 < uncoveredLines.length && uncoveredLines[j + 1] == uncoveredLines[j] + 1) j++;
+                if (result.length() > 0) result.append(", ");
+                result.append(uncoveredLines[i]);
+                if (j > i) result.append('-').append(uncoveredLines[j]);
+                i = j + 1;
+            }
+            return result.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Compare dev and test Cobertura reports where they are, on agent, like {@link GetCoverageCallable}.
+ * Reports are never sent over remoting channel, only resulting {@link CoverageDiff}.
+ * Instead of dev report stored master {@link CoverageBaseline} could be used, it's compact
+ * so sent to agent as is.
+ */
+final class CoverageDiffCallable extends MasterToSlaveFileCallable<CoverageDiff> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String devCoverage;
+    private final byte[] devBaseline;
+    private final String testCoverage;
+
+    /**
+     * @param devCoverage  - path to report of target branch, relative to workspace or absolute
+     * @param testCoverage - path to report of pull request, relative to workspace or absolute
+     */
+    CoverageDiffCallable(final String devCoverage, final String testCoverage) {
+        this.devCoverage = devCoverage;
+        this.devBaseline = null;
+        this.testCoverage = testCoverage;
+    }
+
+    /**
+     * @param devBaseline  - {@link CoverageBaseline} of target branch
+     * @param testCoverage - path to report of pull request, relative to workspace or absolute
+     */
+    CoverageDiffCallable(final byte[] devBaseline, final String testCoverage) {
+        this.devCoverage = null;
+        this.devBaseline = devBaseline;
+        this.testCoverage = testCoverage;
+    }
+
+    static File resolve(final File workspace, final String path) {
+        final File file = new File(path);
+        return file.isAbsolute() ? file : new File(workspace, path);
+    }
+
+    private static LineCoverage read(final File report, final FileIds ids) throws IOException {
+        try (InputStream in = ReportInput.open(report.getPath())) {
+            return LineCoverage.read(report.getPath(), in, ids);
+        }
+    }
+
+    @Override
+    public CoverageDiff invoke(final File workspace, final VirtualChannel channel) throws IOException {
+        final FileIds ids = new FileIds();
+        final LineCoverage dev = devBaseline != null
+                ? CoverageBaseline.read(devBaseline, ids) : read(resolve(workspace, devCoverage), ids);
+        final LineCoverage test = read(resolve(workspace, testCoverage), ids);
+        return CoverageDiff.compare(dev, test);
+    }
+
+}
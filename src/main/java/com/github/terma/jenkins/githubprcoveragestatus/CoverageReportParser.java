@@ -17,8 +17,19 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
+import java.io.InputStream;
+
 interface CoverageReportParser {
 
-    float get(String filePath);
+    /**
+     * @return counts of single report, see {@link CoverageCounts#ofReport(long, long)}
+     */
+    CoverageCounts get(String filePath);
+
+    /**
+     * Same as {@link #get(String)} but reads report from given stream,
+     * path is only for error messages. Parser could stop before end of stream.
+     */
+    CoverageCounts get(String filePath, InputStream in);
 
 }
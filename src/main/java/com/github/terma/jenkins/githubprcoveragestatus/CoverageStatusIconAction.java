@@ -2,8 +2,8 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 
 import java.io.IOException;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
+import javax.servlet.http.HttpServletResponse;
+
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -28,6 +28,12 @@ public class CoverageStatusIconAction implements UnprotectedRootAction {
         return "coverage-status-icon";
     }
 
+    /**
+     * Badge for coverage is same till thresholds are changed, clients could keep it a while
+     * and after revalidate by ETag.
+     */
+    private static final String CACHE_CONTROL = "public, max-age=300";
+
     /**
      * Used by Jenkins Stapler service when get request on URL jenkins_host/getUrlName()
      *
@@ -40,22 +46,27 @@ public class CoverageStatusIconAction implements UnprotectedRootAction {
         final float coverage = Float.parseFloat(request.getParameter("coverage"));
         final float masterCoverage = Float.parseFloat(request.getParameter("masterCoverage"));
 
-        response.setContentType("image/svg+xml");
-
-        String svg = IOUtils.toString(this.getClass().getResourceAsStream(
-                "/com/github/terma/jenkins/githubprcoveragestatus/Icon/icon.svg"));
+        final CoverageBadge.Rendered badge = CoverageBadge.SHARED.get(
+                coverage, masterCoverage, Configuration.getYellowThreshold(), Configuration.getGreenThreshold());
 
-        final Message message = new Message(coverage, masterCoverage);
-        svg = StringUtils.replace(svg, "{{ message }}", message.forIcon());
+        response.setHeader("ETag", badge.getEtag());
+        response.setHeader("Cache-Control", CACHE_CONTROL);
+        if (isNotModified(request.getHeader("If-None-Match"), badge.getEtag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
-        final int coveragePercent = Percent.of(coverage);
-        String color;
-        if (coveragePercent < Configuration.getYellowThreshold()) color = "#b94947"; // red
-        else if (coveragePercent < Configuration.getGreenThreshold()) color = "#F89406"; // yellow
-        else color = "#97CA00"; // green
-        svg = StringUtils.replace(svg, "{{ color }}", color);
+        response.setContentType("image/svg+xml");
+        response.getWriter().write(badge.getSvg());
+    }
 
-        response.getWriter().write(svg);
+    static boolean isNotModified(final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String value : ifNoneMatch.split(",")) {
+            final String trimmed = value.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) return true;
+        }
+        return false;
     }
 
 }
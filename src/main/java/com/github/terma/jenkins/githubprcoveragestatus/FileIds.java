@@ -0,0 +1,55 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of file names to dense int ids, so per file data of several reports
+ * could be kept in arrays indexed by id and compared without string lookups.
+ * Not thread safe.
+ */
+final class FileIds {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * @return id of file, new one if file is not known yet
+     */
+    int intern(final String name) {
+        final Integer id = ids.get(name);
+        if (id != null) return id;
+        final int newId = names.size();
+        names.add(name);
+        ids.put(name, newId);
+        return newId;
+    }
+
+    String getName(final int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parse Cobertura report on agent and return it as {@link CoverageBaseline},
+ * only compact baseline is sent to controller.
+ */
+final class GetBaselineCallable extends MasterToSlaveFileCallable<byte[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String report;
+
+    /**
+     * @param report - path to Cobertura report, relative to workspace or absolute
+     */
+    GetBaselineCallable(final String report) {
+        this.report = report;
+    }
+
+    @Override
+    public byte[] invoke(final File workspace, final VirtualChannel channel) throws IOException {
+        final File file = CoverageDiffCallable.resolve(workspace, report);
+        try (InputStream in = ReportInput.open(file.getPath())) {
+            return CoverageBaseline.write(LineCoverage.read(file.getPath(), in, new FileIds()));
+        }
+    }
+
+}
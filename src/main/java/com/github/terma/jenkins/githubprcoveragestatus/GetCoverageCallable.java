@@ -18,37 +18,107 @@ limitations under the License.
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import hudson.FilePath;
-import hudson.Util;
 import hudson.remoting.VirtualChannel;
 import jenkins.MasterToSlaveFileCallable;
-import org.apache.tools.ant.DirectoryScanner;
-import org.apache.tools.ant.types.FileSet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+/**
+ * Find all supported coverage reports in workspace by one directory walk (see {@link ReportScanner})
+ * then parse them in parallel on agent. Reports counts are summed up, so coverage
+ * is weighted by size of each report (see {@link CoverageCounts}).
+ * <p>
+ * Reports are always processed in sorted path order so result doesn't depend on
+ * number of threads or order in which parsing is finished.
+ * <p>
+ * Counts of reports which are not changed since previous step in the same workspace
+ * are taken from {@link ParseCache} instead of parsing.
+ */
 @SuppressWarnings("WeakerAccess")
-final class GetCoverageCallable extends MasterToSlaveFileCallable<Float> implements CoverageRepository {
+final class GetCoverageCallable extends MasterToSlaveFileCallable<GetCoverageCallable.Result>
+        implements CoverageRepository {
 
     private final boolean disableSimpleCov;
-    private String jacocoCounterType = "";
+    private final String jacocoCounterType;
+    private final int parallelism;
+    private final String reportRoots;
+    private final String reportExcludes;
+    private final transient PrintStream buildLog;
+    private final transient BuildMetricsAction metrics;
+    private boolean parseCache = true;
 
-    GetCoverageCallable(final boolean disableSimpleCov, final String jacocoCounterType) {
+    GetCoverageCallable(final boolean disableSimpleCov, final String jacocoCounterType, final int parallelism) {
+        this(disableSimpleCov, jacocoCounterType, parallelism, null, null, null);
+    }
+
+    GetCoverageCallable(
+            final boolean disableSimpleCov,
+            final String jacocoCounterType,
+            final int parallelism,
+            final String reportRoots,
+            final String reportExcludes,
+            final PrintStream buildLog
+    ) {
+        this(disableSimpleCov, jacocoCounterType, parallelism, reportRoots, reportExcludes, buildLog, null);
+    }
+
+    GetCoverageCallable(
+            final boolean disableSimpleCov,
+            final String jacocoCounterType,
+            final int parallelism,
+            final String reportRoots,
+            final String reportExcludes,
+            final PrintStream buildLog,
+            final BuildMetricsAction metrics
+    ) {
         this.disableSimpleCov = disableSimpleCov;
         this.jacocoCounterType = jacocoCounterType;
+        this.parallelism = parallelism;
+        this.reportRoots = reportRoots;
+        this.reportExcludes = reportExcludes;
+        this.buildLog = buildLog;
+        this.metrics = metrics;
     }
 
-    private List<Float> getFloats(File ws, String path, CoverageReportParser parser) {
-        FileSet fs = Util.createFileSet(ws, path);
-        DirectoryScanner ds = fs.getDirectoryScanner();
-        String[] files = ds.getIncludedFiles();
-        List<Float> cov = new ArrayList<>();
-        for (String file : files) {
-            cov.add(parser.get(new File(ds.getBasedir(), file).getAbsolutePath()));
+    /**
+     * @return report file name to parser, all patterns are <code>**&#47;name</code>
+     */
+    private Map<String, CoverageReportParser> getParsers() {
+        final Map<String, CoverageReportParser> parsers = new LinkedHashMap<>();
+        final CoverageReportParser cobertura = new CoberturaParser();
+        final CoverageReportParser jacoco = new JacocoParser(jacocoCounterType);
+        parsers.put("cobertura.xml", cobertura);
+        parsers.put("cobertura-coverage.xml", cobertura);
+        parsers.put("jacoco.xml", jacoco);
+        //default for gradle
+        parsers.put("jacocoTestReport.xml", jacoco);
+        parsers.put("clover.xml", new CloverParser());
+        if (!disableSimpleCov) {
+            parsers.put("coverage.json", new SimpleCovParser());
         }
-        return cov;
+        return parsers;
+    }
+
+    /**
+     * @param parseCache - false to parse all reports even if they are not changed
+     */
+    void setParseCache(final boolean parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    int getParallelism() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
     }
 
     @Override
@@ -56,32 +126,196 @@ final class GetCoverageCallable extends MasterToSlaveFileCallable<Float> impleme
         if (workspace == null) {
             throw new IllegalArgumentException("Workspace should not be null!");
         }
-        return workspace.act(new GetCoverageCallable(disableSimpleCov, jacocoCounterType));
+        final Result result = workspace.act(this);
+        if (buildLog != null) {
+            final CoverageCounts counts = result.getCounts();
+            buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "found " + counts.getReports()
+                    + " coverage report(s), visited " + result.getVisitedDirectories()
+                    + " directories, pruned " + result.getPrunedDirectories());
+            buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + (counts.isWeighted()
+                    ? "coverage weighted by counts, covered " + counts.getCovered() + " of "
+                    + (counts.getCovered() + counts.getMissed())
+                    : "some reports provide only ratio, coverage is average of reports"));
+            buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "scan took " + result.getScanMillis()
+                    + " ms, " + result.getStats());
+            if (result.getCacheHits() + result.getCacheMisses() > 0) {
+                buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "parse cache: " + result.getCacheHits()
+                        + " hit(s), " + result.getCacheMisses() + " miss(es)");
+            }
+        }
+        if (metrics != null) {
+            metrics.addReports(result.getStats(), result.getVisitedDirectories(), result.getScanMillis());
+        }
+        return result.getCoverage();
     }
 
     @Override
-    public Float invoke(final File ws, final VirtualChannel channel) {
-        final List<Float> cov = new ArrayList<>();
-        cov.addAll(getFloats(ws, "**/cobertura.xml", new CoberturaParser()));
-        cov.addAll(getFloats(ws, "**/cobertura-coverage.xml", new CoberturaParser()));
-        cov.addAll(getFloats(ws, "**/jacoco.xml", new JacocoParser(jacocoCounterType)));
-        //default for gradle
-        cov.addAll(getFloats(ws, "**/jacocoTestReport.xml", new JacocoParser(jacocoCounterType)));
-        cov.addAll(getFloats(ws, "**/clover.xml", new CloverParser()));
-        if (!disableSimpleCov) {
-            cov.addAll(getFloats(ws, "**/coverage.json", new SimpleCovParser()));
+    public Result invoke(final File ws, final VirtualChannel channel) throws IOException, InterruptedException {
+        final Map<String, CoverageReportParser> parsers = getParsers();
+        final long scanStart = System.currentTimeMillis();
+        final ReportScanner scanner = new ReportScanner(ws, reportRoots, reportExcludes, parsers.keySet());
+        final List<String> files = scanner.scan();
+        final long scanMillis = System.currentTimeMillis() - scanStart;
+
+        final ParseCache cache = parseCache && !Boolean.getBoolean(ParseCache.DISABLE_PROPERTY)
+                ? ParseCache.load(ws) : null;
+        final ReportStats stats = new ReportStats();
+        final List<Callable<CoverageCounts>> tasks = new ArrayList<>(files.size());
+        for (final String file : files) {
+            final CoverageReportParser parser = parsers.get(new File(file).getName());
+            final String format = getFormat(parser);
+            final File report = new File(ws, file);
+            final String path = report.getAbsolutePath();
+            final String key = file + "\n" + format + (parser instanceof JacocoParser ? ":" + jacocoCounterType : "");
+            tasks.add(new Callable<CoverageCounts>() {
+                @Override
+                public CoverageCounts call() {
+                    final long start = System.nanoTime();
+                    CoverageCounts counts = cache != null ? cache.get(key, report) : null;
+                    if (counts == null) {
+                        counts = cache != null ? cache.parse(key, report, parser) : parser.get(path);
+                    }
+                    stats.add(format, report.length(), System.nanoTime() - start);
+                    return counts;
+                }
+            });
+        }
+
+        final CoverageCounts total = new CoverageCounts();
+        for (CoverageCounts counts : parse(tasks)) {
+            total.merge(counts);
+        }
+        if (cache == null) {
+            return new Result(total, scanner.getVisitedDirectories(), scanner.getPrunedDirectories(), stats, scanMillis);
         }
+        cache.save();
+        return new Result(total, scanner.getVisitedDirectories(), scanner.getPrunedDirectories(), stats, scanMillis,
+                cache.getHits(), cache.getMisses());
+    }
+
+    /**
+     * @return name of report format for stats
+     */
+    static String getFormat(final CoverageReportParser parser) {
+        if (parser instanceof JacocoParser) return "jacoco";
+        if (parser instanceof CoberturaParser) return "cobertura";
+        if (parser instanceof CloverParser) return "clover";
+        if (parser instanceof SimpleCovParser) return "simplecov";
+        return parser.getClass().getSimpleName();
+    }
 
-        float s = 0;
-        for (float v : cov) {
-            s += v;
+    /**
+     * @return results in the same order as tasks
+     */
+    private List<CoverageCounts> parse(final List<Callable<CoverageCounts>> tasks)
+            throws IOException, InterruptedException {
+        final List<CoverageCounts> results = new ArrayList<>(tasks.size());
+        final int threads = Math.min(getParallelism(), tasks.size());
+        if (threads <= 1) {
+            for (Callable<CoverageCounts> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
         }
 
-        if (cov.isEmpty()) {
-            return 0f;
-        } else {
-            return s / cov.size();
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<CoverageCounts> future : pool.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw unwrap(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
         }
     }
 
+    private static CoverageCounts call(final Callable<CoverageCounts> task) throws IOException {
+        try {
+            return task.call();
+        } catch (RuntimeException | IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static RuntimeException unwrap(final Throwable cause) throws IOException {
+        if (cause instanceof RuntimeException) return (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        if (cause instanceof IOException) throw (IOException) cause;
+        return new RuntimeException(cause);
+    }
+
+    /**
+     * What is sent back from agent, only counts not reports itself.
+     */
+    static final class Result implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CoverageCounts counts;
+        private final int visitedDirectories;
+        private final int prunedDirectories;
+        private final ReportStats stats;
+        private final long scanMillis;
+        private final int cacheHits;
+        private final int cacheMisses;
+
+        Result(CoverageCounts counts, int visitedDirectories, int prunedDirectories, ReportStats stats, long scanMillis) {
+            this(counts, visitedDirectories, prunedDirectories, stats, scanMillis, 0, 0);
+        }
+
+        Result(CoverageCounts counts, int visitedDirectories, int prunedDirectories, ReportStats stats, long scanMillis,
+               int cacheHits, int cacheMisses) {
+            this.counts = counts;
+            this.visitedDirectories = visitedDirectories;
+            this.prunedDirectories = prunedDirectories;
+            this.stats = stats;
+            this.scanMillis = scanMillis;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+        }
+
+        float getCoverage() {
+            return counts.getCoverage();
+        }
+
+        CoverageCounts getCounts() {
+            return counts;
+        }
+
+        int getReports() {
+            return counts.getReports();
+        }
+
+        int getVisitedDirectories() {
+            return visitedDirectories;
+        }
+
+        int getPrunedDirectories() {
+            return prunedDirectories;
+        }
+
+        ReportStats getStats() {
+            return stats;
+        }
+
+        long getScanMillis() {
+            return scanMillis;
+        }
+
+        int getCacheHits() {
+            return cacheHits;
+        }
+
+        int getCacheMisses() {
+            return cacheMisses;
+        }
+
+    }
+
 }
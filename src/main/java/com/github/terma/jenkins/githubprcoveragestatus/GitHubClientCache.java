@@ -0,0 +1,130 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controller wide cache of {@link GitHub} clients by API URL and credentials.
+ * <p>
+ * Creating client means new connection setup (and for authenticated clients one more request)
+ * for each build, reused client keeps HTTP keep-alive connections of its connector.
+ * Credentials are part of key only as hash. Cache is cleared when global configuration
+ * is saved, so old clients are not kept after token or URL change.
+ */
+final class GitHubClientCache {
+
+    interface Factory {
+        GitHub create(String apiUrl, String personalAccessToken) throws IOException;
+    }
+
+    static final Factory DEFAULT_FACTORY = new Factory() {
+        @Override
+        public GitHub create(String apiUrl, String personalAccessToken) throws IOException {
+            if (apiUrl != null) {
+                if (personalAccessToken != null) {
+                    return GitHub.connectToEnterprise(apiUrl, personalAccessToken);
+                } else {
+                    return GitHub.connectToEnterpriseAnonymously(apiUrl);
+                }
+            } else {
+                if (personalAccessToken != null) {
+                    return GitHub.connectUsingOAuth(personalAccessToken);
+                } else {
+                    return GitHub.connectAnonymously();
+                }
+            }
+        }
+    };
+
+    private final Factory factory;
+    private final Map<String, GitHub> clients = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    GitHubClientCache(final Factory factory) {
+        this.factory = factory;
+    }
+
+    private static String toKey(final String apiUrl, final String personalAccessToken) {
+        if (personalAccessToken == null) return apiUrl + "\nanonymous";
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(personalAccessToken.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder key = new StringBuilder(apiUrl).append('\n');
+            for (byte b : digest) key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param apiUrl              - GitHub Enterprise API URL or null for github.com
+     * @param personalAccessToken - token or null for anonymous access
+     */
+    GitHub get(final String apiUrl, final String personalAccessToken) throws IOException {
+        final String key = toKey(apiUrl, personalAccessToken);
+        GitHub gitHub = clients.get(key);
+        if (gitHub != null) {
+            hits.incrementAndGet();
+            return gitHub;
+        }
+        synchronized (this) {
+            gitHub = clients.get(key);
+            if (gitHub != null) {
+                hits.incrementAndGet();
+                return gitHub;
+            }
+            gitHub = factory.create(apiUrl, personalAccessToken);
+            clients.put(key, gitHub);
+            misses.incrementAndGet();
+            return gitHub;
+        }
+    }
+
+    void invalidate() {
+        clients.clear();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    @Override
+    public String toString() {
+        return "GitHubClientCache{clients=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+
+}
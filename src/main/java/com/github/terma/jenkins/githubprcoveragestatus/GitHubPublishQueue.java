@@ -0,0 +1,325 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.ContextResettingExecutorService;
+import jenkins.util.Timer;
+import org.kohsuke.github.HttpException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide queue of GitHub updates (comments, commit statuses), so build executor
+ * doesn't wait for GitHub.
+ * <p>
+ * Updates are published by small pool of workers, retries are delayed by Jenkins {@link Timer}.
+ * Update failed with IO error, GitHub server error or rate limit is retried with exponential
+ * backoff and jitter. Other errors (bad credentials, not found, validation) fail at once.
+ * <p>
+ * Workers never wait for rate limit reset. When local budget of {@link GitHubRateLimitGovernor}
+ * is over, update is put back and scheduled for reset time, this doesn't count as attempt.
+ * <p>
+ * Updates have key (PR or commit). If new update comes for key while old one is still waiting,
+ * only latest is sent. Updates of same key are never published concurrently, so older one
+ * can't overwrite newer.
+ */
+final class GitHubPublishQueue {
+
+    static final int DEFAULT_WORKERS = 2;
+    static final int DEFAULT_MAX_ATTEMPTS = 5;
+    static final long DEFAULT_BACKOFF_MILLIS = 2000;
+
+    private static final Logger LOGGER = Logger.getLogger(GitHubPublishQueue.class.getName());
+
+    /**
+     * Update of GitHub.
+     */
+    abstract static class Publication {
+
+        private final String key;
+
+        /**
+         * @param key - updates with same key supersede each other, like PR comment or status of commit
+         */
+        Publication(final String key) {
+            this.key = key;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        abstract void publish() throws Exception;
+
+        /**
+         * Called once when all attempts failed or error is not retryable.
+         * Build could be finished by this time, so its log could be closed.
+         */
+        abstract void failed(Exception e);
+
+    }
+
+    interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Publish in caller thread, retry without delays. For tests.
+     */
+    static final Scheduler SYNCHRONOUS = new Scheduler() {
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            task.run();
+        }
+    };
+
+    static Scheduler pool(final int workers) {
+        final ExecutorService executor = new ContextResettingExecutorService(Executors.newFixedThreadPool(workers,
+                new NamingThreadFactory(new DaemonThreadFactory(), "github-pr-coverage-status-publisher")));
+        return new Scheduler() {
+            @Override
+            public void schedule(final Runnable task, long delayMillis) {
+                if (delayMillis <= 0) {
+                    executor.execute(task);
+                    return;
+                }
+                // timer only hands task to workers, so it's never blocked by GitHub
+                Timer.get().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        executor.execute(task);
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        };
+    }
+
+    /**
+     * @return true if the same request could succeed later: IO error, GitHub server error or rate limit
+     */
+    static boolean isRetryable(final Exception e) {
+        if (e instanceof HttpException) {
+            final int code = ((HttpException) e).getResponseCode();
+            if (code >= 500 || code == 429 || code < 400) return true;
+            return code == 403 && e.getMessage() != null && e.getMessage().toLowerCase().contains("rate limit");
+        }
+        // GitHub returns 404 as FileNotFoundException
+        return e instanceof IOException && !(e instanceof FileNotFoundException);
+    }
+
+    private static final class Pending {
+        private final Publication publication;
+        private final long submittedAt;
+        private final int attempt;
+
+        private Pending(Publication publication, long submittedAt, int attempt) {
+            this.publication = publication;
+            this.submittedAt = submittedAt;
+            this.attempt = attempt;
+        }
+    }
+
+    private final Scheduler scheduler;
+    private final int maxAttempts;
+    private final long backoffMillis;
+
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final Set<String> running = new HashSet<>();
+
+    private long submitted;
+    private long published;
+    private long failed;
+    private long retried;
+    private long rateLimited;
+    private long coalesced;
+    private long latencySumMillis;
+    private long maxLatencyMillis;
+
+    GitHubPublishQueue(final Scheduler scheduler, final int maxAttempts, final long backoffMillis) {
+        this.scheduler = scheduler;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+    }
+
+    void submit(final Publication publication) {
+        final String key = publication.getKey();
+        synchronized (this) {
+            submitted++;
+            final Pending old = pending.put(key, new Pending(publication, System.currentTimeMillis(), 1));
+            if (old != null) {
+                coalesced++;
+                return;
+            }
+            if (running.contains(key)) return;
+        }
+        schedule(key, 0);
+    }
+
+    private void schedule(final String key, final long delayMillis) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                GitHubPublishQueue.this.run(key);
+            }
+        }, delayMillis);
+    }
+
+    private void run(final String key) {
+        final Pending current;
+        synchronized (this) {
+            if (running.contains(key)) return;
+            current = pending.remove(key);
+            if (current == null) return;
+            running.add(key);
+        }
+
+        Exception error = null;
+        GitHubRateLimitGovernor.setWaitAllowed(false);
+        try {
+            current.publication.publish();
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            GitHubRateLimitGovernor.setWaitAllowed(true);
+        }
+
+        long delay = 0;
+        boolean giveUp = false;
+        final boolean next;
+        final long latency = System.currentTimeMillis() - current.submittedAt;
+        synchronized (this) {
+            running.remove(key);
+            if (error == null) {
+                published++;
+                latencySumMillis += latency;
+                maxLatencyMillis = Math.max(maxLatencyMillis, latency);
+            } else if (pending.containsKey(key)) {
+                // superseded by newer update, which will be tried instead
+                coalesced++;
+            } else if (error instanceof GitHubRateLimitGovernor.RateLimitException) {
+                rateLimited++;
+                pending.put(key, current);
+                delay = Math.max(0, ((GitHubRateLimitGovernor.RateLimitException) error).getResetMillis()
+                        - System.currentTimeMillis()) + GitHubRateLimitGovernor.RESET_MARGIN_MILLIS;
+            } else if (current.attempt < maxAttempts && isRetryable(error)) {
+                retried++;
+                pending.put(key, new Pending(current.publication, current.submittedAt, current.attempt + 1));
+                delay = backoff(current.attempt);
+            } else {
+                failed++;
+                giveUp = true;
+            }
+            next = pending.containsKey(key);
+        }
+
+        if (error == null) {
+            PluginMetrics.time("github.publish.latency", latency);
+        } else if (error instanceof GitHubRateLimitGovernor.RateLimitException) {
+            PluginMetrics.count("github.publish.rate-limited", 1);
+        } else {
+            PluginMetrics.count(giveUp ? "github.publish.failures" : "github.publish.retries", 1);
+        }
+        if (giveUp) {
+            LOGGER.log(Level.WARNING, "Can't publish " + key + " after " + current.attempt + " attempt(s)", error);
+            try {
+                current.publication.failed(error);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Can't report failure of " + key, e);
+            }
+        }
+        if (next) schedule(key, delay);
+    }
+
+    /**
+     * Exponential delay with equal jitter, so retries of many builds don't hit GitHub at same time.
+     */
+    private long backoff(final int attempt) {
+        final long delay = backoffMillis << Math.min(attempt - 1, 16);
+        final long half = delay / 2;
+        return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+    }
+
+    /**
+     * @return updates waiting for publishing or retry
+     */
+    synchronized int getDepth() {
+        return pending.size();
+    }
+
+    synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    synchronized long getPublished() {
+        return published;
+    }
+
+    synchronized long getFailed() {
+        return failed;
+    }
+
+    synchronized long getRetried() {
+        return retried;
+    }
+
+    /**
+     * @return updates put back till rate limit reset
+     */
+    synchronized long getRateLimited() {
+        return rateLimited;
+    }
+
+    /**
+     * @return updates dropped as newer update for same key came
+     */
+    synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return average time from submit to successful publishing
+     */
+    synchronized long getAverageLatencyMillis() {
+        return published == 0 ? 0 : latencySumMillis / published;
+    }
+
+    synchronized long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "GitHubPublishQueue{depth=" + pending.size() + ", submitted=" + submitted + ", published=" + published
+                + ", failed=" + failed + ", retried=" + retried + ", rateLimited=" + rateLimited + ", coalesced=" + coalesced
+                + ", averageLatencyMillis=" + getAverageLatencyMillis() + ", maxLatencyMillis=" + maxLatencyMillis + "}";
+    }
+
+}
@@ -19,34 +19,109 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 
 import org.kohsuke.github.*;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GitHubPullRequestRepository implements PullRequestRepository {
 
-    @Override
-    public GHPullRequest getPullRequestFor(String gitHubUrl, String branch, String sha) throws IOException {
-        for (GHPullRequest pr : getGitHubRepository(gitHubUrl).getPullRequests(GHIssueState.OPEN)) {
-            if (pr.getHead().getRef().equals(branch) && pr.getHead().getSha().equals(sha)) {
-                return pr;
-            }
+    private static final int MAX_CACHED_COMMENTS = 1000;
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Comment of plugin by repository and PR, so update doesn't list comments again
+     */
+    private final Map<String, CachedComment> comments = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedComment>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedComment> eldest) {
+                    return size() > MAX_CACHED_COMMENTS;
+                }
+            });
+
+    /**
+     * Comment is bound to client which got it, so it's used only while the client
+     * is still current one in {@link GitHubClientCache} (token or URL are not changed).
+     */
+    private static final class CachedComment {
+
+        private final GitHub gitHub;
+        private final GHIssueComment comment;
+
+        private CachedComment(GitHub gitHub, GHIssueComment comment) {
+            this.gitHub = gitHub;
+            this.comment = comment;
         }
-        throw new IOException(String.format("No PR found for %s %s @ %s", gitHubUrl, branch, sha));
+
     }
 
     @Override
-    public GHRepository getGitHubRepository(final String gitHubUrl) throws IOException {
-        GitHub gitHub = getGitHub();
+    public int getPullRequestId(String gitHubUrl, String branch, String sha) throws IOException {
+        final PullRequestIdCache cache = ServiceRegistry.getPullRequestIdCache();
+        final Integer cached = cache.get(gitHubUrl, branch, sha);
+        if (cached != null) return cached;
+
+        final GHRepository ghRepository = getGitHubRepository(gitHubUrl);
+        GHPullRequest pullRequest = findByHead(ghRepository, branch, sha);
+        if (pullRequest == null) pullRequest = findByCommit(ghRepository, branch, sha);
+        if (pullRequest == null) {
+            throw new IOException(String.format("No PR found for %s %s @ %s", gitHubUrl, branch, sha));
+        }
+        cache.put(gitHubUrl, branch, sha, pullRequest.getNumber());
+        return pullRequest.getNumber();
+    }
 
+    private static boolean isHead(final GHPullRequest pr, final String branch, final String sha) {
+        return pr.getState() == GHIssueState.OPEN
+                && pr.getHead().getRef().equals(branch) && pr.getHead().getSha().equals(sha);
+    }
+
+    /**
+     * Open PR from branch of same repository, one request filtered by GitHub.
+     */
+    private static GHPullRequest findByHead(
+            final GHRepository ghRepository, final String branch, final String sha) throws IOException {
         try {
-            if (gitHub.getRateLimit().remaining == 0) {
-                throw new IOException("Exceeded rate limit for repository");
+            final PagedIterator<GHPullRequest> pages = ghRepository.queryPullRequests()
+                    .head(ghRepository.getOwnerName() + ":" + branch).state(GHIssueState.OPEN).list()
+                    .withPageSize(PAGE_SIZE).iterator();
+            for (List<GHPullRequest> page = nextPage(pages); page != null; page = nextPage(pages)) {
+                for (GHPullRequest pr : page) {
+                    if (isHead(pr, branch, sha)) return pr;
+                }
             }
-        } catch (FileNotFoundException ex) {
-            throw new IOException("Rate limit API not found.");
-        } catch (IOException ex) {
-            throw new IOException("Error while accessing rate limit API", ex);
+            return null;
+        } finally {
+            observe();
         }
+    }
+
+    /**
+     * PR associated with commit, covers PR from forks where head filter doesn't work.
+     */
+    private static GHPullRequest findByCommit(
+            final GHRepository ghRepository, final String branch, final String sha) throws IOException {
+        acquire();
+        try {
+            final PagedIterator<GHPullRequest> pages = ghRepository.getCommit(sha).listPullRequests()
+                    .withPageSize(PAGE_SIZE).iterator();
+            for (List<GHPullRequest> page = nextPage(pages); page != null; page = nextPage(pages)) {
+                for (GHPullRequest pr : page) {
+                    if (isHead(pr, branch, sha)) return pr;
+                }
+            }
+            return null;
+        } finally {
+            observe();
+        }
+    }
+
+    @Override
+    public GHRepository getGitHubRepository(final String gitHubUrl) throws IOException {
+        GitHub gitHub = getGitHub();
+        acquire();
 
         final String userRepo = GitUtils.getUserRepo(gitHubUrl);
 
@@ -55,32 +130,126 @@ public class GitHubPullRequestRepository implements PullRequestRepository {
         } catch (IOException ex) {
             throw new IOException("Could not retrieve GitHub repository named " + userRepo
                     + " (Do you have properly set 'GitHub project' field in job configuration?)", ex);
+        } finally {
+            ServiceRegistry.getGitHubRateLimitGovernor().observe(gitHub);
+        }
+    }
+
+    /**
+     * Compare is the only API which returns merge base. Its response also has up to 250 commits
+     * and changed files of pull request, so it's one but not cheap request, made only when
+     * pull request is compared with master baseline.
+     */
+    @Override
+    public String getMergeBase(final GHRepository ghRepository, final int prId) throws IOException {
+        acquire();
+        try {
+            final GHPullRequest pullRequest = ghRepository.getPullRequest(prId);
+            acquire();
+            return ghRepository.getCompare(pullRequest.getBase().getRef(), pullRequest.getHead().getSha())
+                    .getMergeBaseCommit().getSHA1();
+        } finally {
+            observe();
         }
     }
 
+    /**
+     * Take request from shared budget, waits if rate limit is exceeded till reset.
+     */
+    private static void acquire() throws IOException {
+        ServiceRegistry.getGitHubRateLimitGovernor().acquire();
+    }
+
+    /**
+     * Take request from shared budget for each page, as each page is separate request.
+     *
+     * @return next page or null if there are no more
+     */
+    private static <T> List<T> nextPage(final PagedIterator<T> pages) throws IOException {
+        acquire();
+        return pages.hasNext() ? pages.nextPage() : null;
+    }
+
+    /**
+     * Refresh budget from last response headers, client is cached so no requests are made.
+     */
+    private static void observe() throws IOException {
+        ServiceRegistry.getGitHubRateLimitGovernor().observe(getGitHub());
+    }
+
     private static GitHub getGitHub() throws IOException {
         final SettingsRepository settingsRepository = ServiceRegistry.getSettingsRepository();
-        final String apiUrl = settingsRepository.getGitHubApiUrl();
-        final String personalAccessToken = settingsRepository.getPersonalAccessToken();
+        return ServiceRegistry.getGitHubClientCache().get(
+                settingsRepository.getGitHubApiUrl(), settingsRepository.getPersonalAccessToken());
+    }
 
-        if (apiUrl != null) {
-            if (personalAccessToken != null) {
-                return GitHub.connectToEnterprise(apiUrl, personalAccessToken);
-            } else {
-                return GitHub.connectToEnterpriseAnonymously(apiUrl);
-            }
-        } else {
-            if (personalAccessToken != null) {
-                return GitHub.connectUsingOAuth(personalAccessToken);
-            } else {
-                return GitHub.connectAnonymously();
-            }
+    @Override
+    public String getHeadSha(final GHRepository ghRepository, final int prId) throws IOException {
+        acquire();
+        try {
+            return ghRepository.getPullRequest(prId).getHead().getSha();
+        } finally {
+            observe();
         }
     }
 
     @Override
     public void comment(final GHRepository ghRepository, final int prId, final String message) throws IOException {
-        ghRepository.getPullRequest(prId).comment(message);
+        acquire();
+        try {
+            final GHPullRequest pullRequest = ghRepository.getPullRequest(prId);
+            acquire();
+            pullRequest.comment(message);
+        } finally {
+            observe();
+        }
+    }
+
+    @Override
+    public void upsertComment(
+            final GHRepository ghRepository, final int prId, final String marker, final String message
+    ) throws IOException {
+        final String key = ghRepository.getFullName() + "#" + prId;
+        final GitHub gitHub = getGitHub();
+        CachedComment cached = comments.get(key);
+        if (cached != null && cached.gitHub != gitHub) {
+            // client was replaced, comment would be updated with old token
+            comments.remove(key);
+            cached = null;
+        }
+        if (cached != null) {
+            acquire();
+            try {
+                cached.comment.update(message);
+                return;
+            } catch (GHFileNotFoundException e) {
+                // comment was deleted, look for other or create new
+                comments.remove(key);
+            } finally {
+                observe();
+            }
+        }
+
+        acquire();
+        try {
+            final GHPullRequest pullRequest = ghRepository.getPullRequest(prId);
+            GHIssueComment existing = null;
+            final PagedIterator<GHIssueComment> pages = pullRequest.listComments().withPageSize(PAGE_SIZE).iterator();
+            for (List<GHIssueComment> page = nextPage(pages); page != null; page = nextPage(pages)) {
+                for (GHIssueComment comment : page) {
+                    if (comment.getBody() != null && comment.getBody().contains(marker)) existing = comment;
+                }
+            }
+            acquire();
+            if (existing != null) {
+                existing.update(message);
+            } else {
+                existing = pullRequest.comment(message);
+            }
+            comments.put(key, new CachedComment(gitHub, existing));
+        } finally {
+            observe();
+        }
     }
 
     @Override
@@ -90,6 +259,11 @@ public class GitHubPullRequestRepository implements PullRequestRepository {
             String targetUrl,
             String description
     ) throws IOException {
-        ghRepository.createCommitStatus(sha1, state, targetUrl, description, "test-coverage-plugin");
+        acquire();
+        try {
+            ghRepository.createCommitStatus(sha1, state, targetUrl, description, "test-coverage-plugin");
+        } finally {
+            observe();
+        }
     }
 }
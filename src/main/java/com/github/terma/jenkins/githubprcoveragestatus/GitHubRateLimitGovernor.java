@@ -0,0 +1,205 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.kohsuke.github.GHRateLimit;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+
+/**
+ * Shared GitHub request budget of controller.
+ * <p>
+ * Budget is taken from rate limit headers of last response ({@link GitHub#lastRateLimit()}),
+ * so tracking costs no requests. Each {@link #acquire()} takes one request from budget locally,
+ * until next response refreshes it, so concurrent builds don't overrun limit.
+ * When budget is over build thread waits till reset time instead of failing, if reset is too far
+ * (more than max wait) {@link RateLimitException} is thrown. Build shows no progress while waiting,
+ * so default max wait is short. Background workers never wait (see {@link #setWaitAllowed(boolean)}),
+ * they get {@link RateLimitException} at once and schedule work for reset time.
+ * <p>
+ * Callers acquire once per request, paginated lists once per page.
+ */
+final class GitHubRateLimitGovernor {
+
+    static final long DEFAULT_MAX_WAIT_MILLIS = 60 * 1000;
+
+    /**
+     * GitHub reset time is in seconds and our clock could be a bit off.
+     */
+    static final long RESET_MARGIN_MILLIS = 1000;
+
+    private static final ThreadLocal<Boolean> WAIT_ALLOWED = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return true;
+        }
+    };
+
+    /**
+     * Budget is over and caller can't wait till reset.
+     */
+    static final class RateLimitException extends IOException {
+
+        private final long resetMillis;
+
+        RateLimitException(final String message, final long resetMillis) {
+            super(message);
+            this.resetMillis = resetMillis;
+        }
+
+        /**
+         * @return time when budget is restored
+         */
+        long getResetMillis() {
+            return resetMillis;
+        }
+
+    }
+
+    interface Clock {
+        long now();
+
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void sleep(long millis) throws InterruptedException {
+            Thread.sleep(millis);
+        }
+    };
+
+    private final long maxWaitMillis;
+    private final Clock clock;
+
+    /**
+     * -1 till first response
+     */
+    private int limit = -1;
+    private int remaining = -1;
+    private long resetMillis;
+    private long waits;
+
+    GitHubRateLimitGovernor(final long maxWaitMillis, final Clock clock) {
+        this.maxWaitMillis = maxWaitMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Update budget from last response of client, no requests are made.
+     */
+    void observe(final GitHub gitHub) {
+        final GHRateLimit rateLimit = gitHub.lastRateLimit();
+        if (rateLimit == null || rateLimit.getResetDate() == null) return;
+        observe(rateLimit.getLimit(), rateLimit.getRemaining(), rateLimit.getResetDate().getTime());
+    }
+
+    synchronized void observe(final int limit, final int remaining, final long resetMillis) {
+        this.limit = limit;
+        this.remaining = remaining;
+        this.resetMillis = resetMillis;
+    }
+
+    /**
+     * @param waitAllowed - false for thread which must not sleep, for example shared publisher worker,
+     *                    reset to true when thread is done
+     */
+    static void setWaitAllowed(final boolean waitAllowed) {
+        if (waitAllowed) WAIT_ALLOWED.remove();
+        else WAIT_ALLOWED.set(false);
+    }
+
+    /**
+     * Take one request from budget, wait for reset if budget is over.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     * @throws RateLimitException     if reset is later than max wait or current thread is not allowed to wait
+     */
+    void acquire() throws IOException {
+        final long wait;
+        synchronized (this) {
+            if (limit < 0) return;
+            final long now = clock.now();
+            if (remaining > 0 || resetMillis <= now) {
+                if (resetMillis <= now) remaining = limit;
+                remaining--;
+                return;
+            }
+            wait = resetMillis - now + RESET_MARGIN_MILLIS;
+            if (!WAIT_ALLOWED.get()) {
+                throw new RateLimitException("Exceeded GitHub rate limit " + limit
+                        + ", resets at " + new Date(resetMillis), resetMillis);
+            }
+            if (wait > maxWaitMillis) {
+                throw new RateLimitException("Exceeded GitHub rate limit " + limit
+                        + ", resets at " + new Date(resetMillis) + " which is later than max wait of "
+                        + maxWaitMillis / 1000 + " s, run build again after reset", resetMillis);
+            }
+            waits++;
+        }
+
+        PluginMetrics.time("github.rate-limit.wait", wait);
+        try {
+            clock.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for GitHub rate limit reset");
+        }
+        acquire();
+    }
+
+    /**
+     * @return requests left till reset, -1 if unknown
+     */
+    synchronized int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * @return -1 if unknown
+     */
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized long getResetMillis() {
+        return resetMillis;
+    }
+
+    /**
+     * @return how many times callers waited for reset
+     */
+    synchronized long getWaits() {
+        return waits;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (limit < 0) return "GitHub rate limit: unknown";
+        return "GitHub rate limit: remaining " + remaining + " of " + limit + ", resets at " + new Date(resetMillis);
+    }
+
+}
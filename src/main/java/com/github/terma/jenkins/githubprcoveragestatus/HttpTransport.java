@@ -0,0 +1,131 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound HTTP of plugin (Sonar).
+ * <p>
+ * Connections are pooled and shared by builds, each request has connect, pool wait and read timeouts,
+ * so stuck server fails build step instead of blocking it forever. Response is parsed from stream,
+ * connection is released to pool when parser returns.
+ */
+final class HttpTransport {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 30 * 1000;
+    static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    /**
+     * Max length of error response body in exception message
+     */
+    private static final int MAX_ERROR_BODY_LENGTH = 4096;
+
+    static final HttpTransport SHARED = new HttpTransport(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS,
+            DEFAULT_MAX_CONNECTIONS);
+
+    interface Parser<T> {
+        T parse(InputStream in) throws IOException;
+    }
+
+    /**
+     * Response with error status.
+     */
+    static final class HttpStatusException extends IOException {
+
+        private final int status;
+
+        HttpStatusException(String uri, int status, String reason) {
+            super("request to " + uri + " failed with " + status + " reason " + reason);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+    }
+
+    private final CloseableHttpClient httpClient;
+
+    HttpTransport(final int connectTimeoutMillis, final int readTimeoutMillis, final int maxConnections) {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setConnectionRequestTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(readTimeoutMillis)
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .useSystemProperties()
+                .build();
+    }
+
+    /**
+     * @param login - null for anonymous request, otherwise basic auth is sent without challenge
+     * @throws HttpStatusException if response status is 400 or more
+     */
+    <T> T get(final String uri, final String login, final String password, final Parser<T> parser) throws IOException {
+        final HttpGet request = new HttpGet(uri);
+        if (login != null) {
+            final String credentials = login + ":" + (password == null ? "" : password);
+            request.setHeader(HttpHeaders.AUTHORIZATION,
+                    "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        final long start = System.currentTimeMillis();
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            final int status = response.getStatusLine().getStatusCode();
+            if (status >= HttpStatus.SC_BAD_REQUEST) {
+                PluginMetrics.count("http.errors", 1);
+                String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                if (body.length() > MAX_ERROR_BODY_LENGTH) body = body.substring(0, MAX_ERROR_BODY_LENGTH);
+                throw new HttpStatusException(uri, status, body);
+            }
+            if (response.getEntity() == null) throw new IOException("request to " + uri + " returned no body");
+            try (InputStream in = response.getEntity().getContent()) {
+                return parser.parse(in);
+            } finally {
+                // read rest of body if parser stopped early, so connection goes back to pool
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        } finally {
+            PluginMetrics.time("http.request", System.currentTimeMillis() - start);
+        }
+    }
+
+}
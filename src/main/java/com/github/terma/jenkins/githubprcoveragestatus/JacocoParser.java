@@ -17,19 +17,27 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
-import org.apache.commons.io.FileUtils;
-
-import java.io.File;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-
-/*
-<counter type="INSTRUCTION" missed="1" covered="4"/>
-    <counter type="LINE" missed="1" covered="2"/>
-    <counter type="COMPLEXITY" missed="1" covered="2"/>
-    <counter type="METHOD" missed="1" covered="2"/>
-    <counter type="CLASS" missed="0" covered="1"/>
+import java.util.Map;
+
+/**
+ * Streaming (StAX) parser for Jacoco report. Only top level <code>/report/counter</code>
+ * elements are read, <code>package</code>, <code>group</code> and <code>sessioninfo</code>
+ * subtrees are skipped without materialization so memory doesn't depend on report size.
+ * <pre>
+ * &lt;counter type="INSTRUCTION" missed="1" covered="4"/&gt;
+ * &lt;counter type="LINE" missed="1" covered="2"/&gt;
+ * &lt;counter type="COMPLEXITY" missed="1" covered="2"/&gt;
+ * &lt;counter type="METHOD" missed="1" covered="2"/&gt;
+ * &lt;counter type="CLASS" missed="0" covered="1"/&gt;
+ * </pre>
  */
 class JacocoParser implements CoverageReportParser {
 
@@ -41,45 +49,94 @@ class JacocoParser implements CoverageReportParser {
         add("line");
     }};
 
-    private String coverageCounterType = "";
+    private final String coverageCounterType;
 
     public JacocoParser(String coverageCounterType) {
-        this.coverageCounterType = coverageCounterType;
+        this.coverageCounterType = isValidCoverageCounter(coverageCounterType)
+                ? coverageCounterType : coverageCounters.get(0);
     }
 
-    private float getByXpath(final String filePath, final String content, final String xpath) {
+    private static long getValue(final String filePath, final String value, final String attribute) {
         try {
-            return Float.parseFloat(XmlUtils.findInXml(content, xpath));
-        } catch (NumberFormatException e) {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException | NullPointerException e) {
             throw new IllegalArgumentException(
                     "Strange Jacoco report!\n" +
                             "File path: " + filePath + "\n" +
-                            "Can't extract float value by XPath: " + xpath + "\n" +
-                            "from:\n" + content);
+                            "Can't read number from attribute: " + attribute);
         }
     }
 
     @Override
-    public float get(String jacocoFilePath) {
-        final String content;
-        try {
-            content = FileUtils.readFileToString(new File(jacocoFilePath));
+    public CoverageCounts get(String jacocoFilePath) {
+        try (InputStream in = ReportInput.open(jacocoFilePath)) {
+            return get(jacocoFilePath, in);
         } catch (IOException e) {
             throw new IllegalArgumentException(
                     "Can't read Jacoco report by path: " + jacocoFilePath);
         }
+    }
 
-        if (!isValidCoverageCounter(coverageCounterType)) {
-            coverageCounterType = coverageCounters.get(0);
+    @Override
+    public CoverageCounts get(final String jacocoFilePath, final InputStream in) {
+        final Map<String, Counter> counters = readCounters(jacocoFilePath, in);
+        final String type = coverageCounterType.toUpperCase();
+        final Counter counter = counters.get(type);
+
+        final long missed = getValue(jacocoFilePath, counter == null ? null : counter.missed, getMissedAttribute(type));
+        final long covered = getValue(jacocoFilePath, counter == null ? null : counter.covered, getCoveredAttribute(type));
+
+        final CoverageCounts counts = CoverageCounts.ofReport(covered, missed);
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            final CoverageCounts.Type detailType = CoverageCounts.Type.find(entry.getKey());
+            if (detailType == null) continue;
+            try {
+                counts.with(detailType,
+                        Long.parseLong(entry.getValue().covered.trim()), Long.parseLong(entry.getValue().missed.trim()));
+            } catch (NumberFormatException | NullPointerException e) {
+                // details for not selected counters are optional
+            }
         }
+        return counts;
+    }
 
-        final float missed = getByXpath(jacocoFilePath, content, getMissedXpath(coverageCounterType));
-        final float covered = getByXpath(jacocoFilePath,content, getCoverageXpath(coverageCounterType));
-        final float coverage = covered + missed;
-        if (coverage == 0) {
-            return 0;
-        } else {
-            return covered / (coverage);
+    /**
+     * Single pass over report which collects all top level counters.
+     *
+     * @return counter type (upper case as in report) to counter
+     */
+    static Map<String, Counter> readCounters(final String jacocoFilePath, final InputStream in) {
+        final Map<String, Counter> counters = new HashMap<>();
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlUtils.createStreamReader(in);
+            if (!"report".equals(XmlUtils.toRootElement(reader))) return counters;
+
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if ("counter".equals(reader.getLocalName())) {
+                        final String type = reader.getAttributeValue(null, "type");
+                        if (type != null) {
+                            counters.put(type, new Counter(
+                                    reader.getAttributeValue(null, "missed"),
+                                    reader.getAttributeValue(null, "covered")));
+                        }
+                    }
+                    XmlUtils.skipElement(reader);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    // end of report
+                    break;
+                }
+            }
+            return counters;
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(
+                    "Strange Jacoco report!\n" +
+                            "File path: " + jacocoFilePath + "\n" +
+                            "Can't parse: " + e.getMessage(), e);
+        } finally {
+            XmlUtils.closeQuietly(reader);
         }
     }
 
@@ -95,11 +152,23 @@ class JacocoParser implements CoverageReportParser {
         return false;
     }
 
-    private String getMissedXpath(String counterType) {
-        return "/report/counter[@type='" + counterType.toUpperCase() + "']/@missed";
+    private static String getMissedAttribute(String counterType) {
+        return "report/counter[type=" + counterType + "]@missed";
+    }
+
+    private static String getCoveredAttribute(String counterType) {
+        return "report/counter[type=" + counterType + "]@covered";
     }
 
-    private String getCoverageXpath(String counterType) {
-        return "/report/counter[@type='" + counterType.toUpperCase() + "']/@covered";
+    static final class Counter {
+
+        final String missed;
+        final String covered;
+
+        Counter(String missed, String covered) {
+            this.missed = missed;
+            this.covered = covered;
+        }
+
     }
 }
@@ -0,0 +1,165 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Per file line coverage of Cobertura report. For each file two bitsets are kept:
+ * relevant lines (any <code>line</code> element) and covered lines (<code>hits</code> above zero),
+ * indexed by file id from {@link FileIds} shared by reports which will be compared.
+ * Lines of all classes of the same file (inner classes etc.) are merged.
+ * <pre>
+ * &lt;class name="a.B" filename="a/B.java" line-rate="0.5"&gt;
+ *     &lt;lines&gt;
+ *         &lt;line number="3" hits="1"/&gt;
+ *         &lt;line number="4" hits="0"/&gt;
+ *     &lt;/lines&gt;
+ * &lt;/class&gt;
+ * </pre>
+ */
+final class LineCoverage {
+
+    private static final BitSet EMPTY = new BitSet(0);
+
+    private final FileIds ids;
+    private BitSet[] relevant = new BitSet[16];
+    private BitSet[] covered = new BitSet[16];
+
+    LineCoverage(final FileIds ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Single streaming pass over Cobertura report, only <code>class</code> and <code>line</code>
+     * elements are looked at.
+     */
+    static LineCoverage read(final String filePath, final InputStream in, final FileIds ids) {
+        final LineCoverage coverage = new LineCoverage(ids);
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlUtils.createStreamReader(in);
+            int current = -1;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String name = reader.getLocalName();
+                    if ("class".equals(name)) {
+                        final String file = reader.getAttributeValue(null, "filename");
+                        current = file == null ? -1 : ids.intern(file);
+                    } else if ("line".equals(name) && current >= 0) {
+                        final int number = toLineNumber(reader.getAttributeValue(null, "number"));
+                        if (number >= 0) {
+                            coverage.add(current, number, isHit(reader.getAttributeValue(null, "hits")));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "class".equals(reader.getLocalName())) {
+                    current = -1;
+                }
+            }
+            return coverage;
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(
+                    "Strange Cobertura report!\n" +
+                            "File path: " + filePath + "\n" +
+                            "Can't parse: " + e.getMessage(), e);
+        } finally {
+            XmlUtils.closeQuietly(reader);
+        }
+    }
+
+    private static int toLineNumber(final String value) {
+        if (value == null) return -1;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Hits are never negative, so any non zero digit means line is covered.
+     * Avoids number parsing for each line.
+     */
+    private static boolean isHit(final String hits) {
+        if (hits == null) return false;
+        for (int i = 0; i < hits.length(); i++) {
+            final char c = hits.charAt(i);
+            if (c >= '1' && c <= '9') return true;
+        }
+        return false;
+    }
+
+    void add(final int id, final int line, final boolean hit) {
+        ensureCapacity(id);
+        if (relevant[id] == null) {
+            relevant[id] = new BitSet();
+            covered[id] = new BitSet();
+        }
+        relevant[id].set(line);
+        if (hit) covered[id].set(line);
+    }
+
+    /**
+     * Replace lines of file, used to restore coverage from {@link CoverageBaseline}.
+     */
+    void set(final int id, final BitSet relevantLines, final BitSet coveredLines) {
+        ensureCapacity(id);
+        relevant[id] = relevantLines;
+        covered[id] = coveredLines;
+    }
+
+    private void ensureCapacity(final int id) {
+        if (id >= relevant.length) {
+            final int size = Math.max(id + 1, relevant.length * 2);
+            relevant = Arrays.copyOf(relevant, size);
+            covered = Arrays.copyOf(covered, size);
+        }
+    }
+
+    FileIds getIds() {
+        return ids;
+    }
+
+    /**
+     * @return true if report has lines for file
+     */
+    boolean has(final int id) {
+        return id < relevant.length && relevant[id] != null;
+    }
+
+    /**
+     * @return relevant lines of file, don't modify
+     */
+    BitSet getRelevant(final int id) {
+        return has(id) ? relevant[id] : EMPTY;
+    }
+
+    /**
+     * @return covered lines of file, don't modify
+     */
+    BitSet getCovered(final int id) {
+        return has(id) ? covered[id] : EMPTY;
+    }
+
+}
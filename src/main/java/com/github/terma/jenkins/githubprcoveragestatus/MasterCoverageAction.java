@@ -35,7 +35,9 @@ import org.kohsuke.stapler.DataBoundSetter;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Record coverage of Jenkins Build and assume it as master coverage.
@@ -53,6 +55,9 @@ public class MasterCoverageAction extends Recorder implements SimpleBuildStep {
 
     private Map<String, String> scmVars;
     private String jacocoCounterType;
+    private String reportRoots;
+    private String reportExcludes;
+    private String baselineReport;
 
     @DataBoundConstructor
     public MasterCoverageAction() {
@@ -78,6 +83,37 @@ public class MasterCoverageAction extends Recorder implements SimpleBuildStep {
         return jacocoCounterType;
     }
 
+    public String getReportRoots() {
+        return reportRoots;
+    }
+
+    @DataBoundSetter
+    public void setReportRoots(String reportRoots) {
+        this.reportRoots = reportRoots;
+    }
+
+    public String getReportExcludes() {
+        return reportExcludes;
+    }
+
+    @DataBoundSetter
+    public void setReportExcludes(String reportExcludes) {
+        this.reportExcludes = reportExcludes;
+    }
+
+    public String getBaselineReport() {
+        return baselineReport;
+    }
+
+    /**
+     * @param baselineReport - Cobertura report (relative to workspace) to keep as per file baseline
+     *                       for commit, see {@link BaselineStore}
+     */
+    @DataBoundSetter
+    public void setBaselineReport(String baselineReport) {
+        this.baselineReport = baselineReport;
+    }
+
     @SuppressWarnings("NullableProblems")
     @Override
     public void perform(final Run build, final FilePath workspace, final Launcher launcher,
@@ -87,12 +123,57 @@ public class MasterCoverageAction extends Recorder implements SimpleBuildStep {
         final PrintStream buildLog = listener.getLogger();
         final String gitUrl = PrIdAndUrlUtils.getGitUrl(scmVars, build, listener);
 
-        final boolean disableSimpleCov = ServiceRegistry.getSettingsRepository().isDisableSimpleCov();
+        final SettingsRepository settingsRepository = ServiceRegistry.getSettingsRepository();
+        final boolean disableSimpleCov = settingsRepository.isDisableSimpleCov();
         final String jacocoCounterType = this.jacocoCounterType;
-        final float masterCoverage = ServiceRegistry.getCoverageRepository(disableSimpleCov, jacocoCounterType)
-                .get(workspace);
-        buildLog.println("Master coverage " + Percent.toWholeString(masterCoverage));
-        Configuration.setMasterCoverage(gitUrl, masterCoverage);
+        final BuildStages stages = new BuildStages(buildLog, BuildStages.REMOTE_EXECUTOR);
+        final BuildMetricsAction metrics = new BuildMetricsAction(DISPLAY_NAME);
+        final CoverageRepository coverageRepository = ServiceRegistry.getCoverageRepository(disableSimpleCov,
+                jacocoCounterType, settingsRepository.getParseParallelism(), reportRoots, reportExcludes, buildLog, metrics);
+        try {
+            final float masterCoverage = stages.run("build coverage", new Callable<Float>() {
+                @Override
+                public Float call() throws IOException, InterruptedException {
+                    return coverageRepository.get(workspace);
+                }
+            });
+            buildLog.println("Master coverage " + Percent.toWholeString(masterCoverage));
+            Configuration.setMasterCoverage(gitUrl, masterCoverage);
+
+            if (baselineReport != null) {
+                stages.run("master baseline", new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        recordBaseline(build, workspace, listener);
+                        return null;
+                    }
+                });
+            }
+        } finally {
+            metrics.addStages(stages);
+            build.addAction(metrics);
+            PluginMetrics.record(metrics);
+        }
+    }
+
+    private void recordBaseline(final Run build, final FilePath workspace, final TaskListener listener)
+            throws InterruptedException {
+        final PrintStream buildLog = listener.getLogger();
+        try {
+            final String sha = PrIdAndUrlUtils.getCommitSha(scmVars, build, listener);
+            if (sha == null) {
+                buildLog.println("Skip master baseline, can't find " + PrIdAndUrlUtils.GIT_COMMIT_PROPERTY
+                        + " in scmVars or build variables");
+                return;
+            }
+            final String repoUrl = PrIdAndUrlUtils.getGitUrl(scmVars, build, listener, false);
+            final byte[] baseline = workspace.act(new GetBaselineCallable(baselineReport));
+            ServiceRegistry.getBaselineStore().save(repoUrl, sha, baseline);
+            buildLog.println("Master baseline for " + sha + " recorded, " + baseline.length + " bytes");
+        } catch (IOException | RuntimeException e) {
+            PrintWriter pw = listener.error("Couldn't record master baseline from " + baselineReport + "!");
+            e.printStackTrace(pw);
+        }
     }
 
     @Override
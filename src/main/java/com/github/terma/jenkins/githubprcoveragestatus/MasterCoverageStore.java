@@ -0,0 +1,201 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Master coverage by repository kept in append-only log with in-memory index.
+ * <p>
+ * Each {@link #put(String, float)} appends one record <code>(UTF repository, float coverage)</code>,
+ * so write cost doesn't depend on number of tracked repositories. Last record for repository wins.
+ * When log has much more records than repositories it's compacted: index is written to
+ * temporary file which replaces log. Reads never touch disk.
+ * <p>
+ * Broken tail (partially written record) is ignored and cut off on load.
+ * Record is always written right after last good record and log is cut after it,
+ * so bytes of failed write (disk full, etc.) never stay in the middle of log.
+ */
+final class MasterCoverageStore {
+
+    static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    private final File log;
+    private final Map<String, Float> index = new ConcurrentHashMap<>();
+    private int records;
+    private long length;
+
+    MasterCoverageStore(final File log) {
+        this.log = log;
+    }
+
+    /**
+     * Read log into index, should be called once before use.
+     */
+    synchronized void load() throws IOException {
+        index.clear();
+        records = 0;
+        length = 0;
+        if (!log.isFile()) return;
+
+        long validLength = 0;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+            final DataInputStream in = new DataInputStream(counting);
+            while (true) {
+                final String repo;
+                final float coverage;
+                try {
+                    repo = in.readUTF();
+                    coverage = in.readFloat();
+                } catch (EOFException e) {
+                    break;
+                }
+                index.put(repo, coverage);
+                records++;
+                validLength = counting.getByteCount();
+            }
+        }
+
+        if (validLength < log.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+                file.setLength(validLength);
+            }
+        }
+        length = validLength;
+    }
+
+    private static byte[] toRecord(final String repo, final float coverage) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(repo.length() + 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(repo);
+            out.writeFloat(coverage);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return coverage or null if repository is not tracked
+     */
+    Float get(final String repo) {
+        return index.get(repo);
+    }
+
+    /**
+     * @return read only view of current coverage by repository
+     */
+    Map<String, Float> getAll() {
+        return Collections.unmodifiableMap(index);
+    }
+
+    synchronized void put(final String repo, final float coverage) throws IOException {
+        final byte[] record = toRecord(repo, coverage);
+        Files.createDirectories(log.getAbsoluteFile().getParentFile().toPath());
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(record);
+                channel.position(length);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.truncate(length + record.length);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(length);
+                } catch (IOException ignored) {
+                    // next put writes over broken bytes anyway
+                }
+                throw e;
+            }
+        }
+        length += record.length;
+        index.put(repo, coverage);
+        records++;
+
+        if (records >= MIN_RECORDS_TO_COMPACT && records > 2 * index.size()) compact();
+    }
+
+    /**
+     * Add all which are not tracked yet, used to migrate from old storage.
+     */
+    synchronized void putAllAbsent(final Map<String, Float> coverageByRepo) throws IOException {
+        for (Map.Entry<String, Float> entry : coverageByRepo.entrySet()) {
+            if (entry.getValue() != null && !index.containsKey(entry.getKey())) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Rewrite log so it has only one record per repository.
+     */
+    synchronized void compact() throws IOException {
+        final File dir = log.getAbsoluteFile().getParentFile();
+        Files.createDirectories(dir.toPath());
+        final File temp = File.createTempFile(log.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                for (Map.Entry<String, Float> entry : index.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeFloat(entry.getValue());
+                }
+            }
+            try {
+                Files.move(temp.toPath(), log.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        records = index.size();
+        length = log.length();
+    }
+
+    @Override
+    public String toString() {
+        return log.getPath();
+    }
+
+    /**
+     * @return records in log, for tests
+     */
+    synchronized int getRecords() {
+        return records;
+    }
+
+}
@@ -20,32 +20,33 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 import org.apache.commons.httpclient.URIException;
 import org.apache.commons.httpclient.util.URIUtil;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @SuppressWarnings("WeakerAccess")
 class Message {
 
     //see http://shields.io/ for reference
     private static final String BADGE_TEMPLATE = "https://img.shields.io/badge/coverage-%s-%s.svg";
 
+    /**
+     * Hidden in rendered comment, marks comment of plugin to update it by next build
+     */
+    static final String COMMENT_MARKER = "<!-- github-pr-coverage-status -->";
+
     private static final String COLOR_RED = "red";
     private static final String COLOR_YELLOW = "yellow";
     private static final String COLOR_GREEN = "brightgreen";
 
     private final float coverage;
     private final float masterCoverage;
-    private Map<String, String> coverageResult;
+    private final CoverageDiff coverageDiff;
 
-    public Message(float coverage, float masterCoverage, Map<String, String> coverageResult) {
+    public Message(float coverage, float masterCoverage, CoverageDiff coverageDiff) {
         this.coverage = Percent.roundFourAfterDigit(coverage);
         this.masterCoverage = Percent.roundFourAfterDigit(masterCoverage);
-        this.coverageResult = coverageResult;
+        this.coverageDiff = coverageDiff;
     }
+
     public Message(float coverage, float masterCoverage) {
-        this.coverage = Percent.roundFourAfterDigit(coverage);
-        this.masterCoverage = Percent.roundFourAfterDigit(masterCoverage);
-        this.coverageResult = new HashMap<>();
+        this(coverage, masterCoverage, CoverageDiff.empty());
     }
 
     public String forConsole() {
@@ -84,10 +85,10 @@ class Message {
                 Percent.toString(Percent.change(coverage, masterCoverage)),
                 Percent.toWholeNoSignString(masterCoverage)));
 
-        for (Map.Entry<String, String> entry : coverageResult.entrySet()) {
-            message.append("<BR/>").append(entry.getKey()).append(": -").append(entry.getValue());
+        for (CoverageDiff.FileDiff file : coverageDiff.getFiles()) {
+            message.append("<BR/>").append(file.getFile()).append(": -").append(file.getChange());
         }
-        if (masterCoverage > coverage && coverageResult.entrySet().size() ==0){
+        if (masterCoverage > coverage && coverageDiff.isEmpty()) {
             message.append("<BR/>").append("Failed to get the coverage reduce reason. Check coverage reports manually");
         }
         return message.toString();
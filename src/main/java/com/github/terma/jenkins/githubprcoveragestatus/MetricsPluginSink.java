@@ -0,0 +1,108 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import jenkins.metrics.api.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PluginMetrics} backed by registry of Metrics plugin, see {@link PluginMetrics} why separate class.
+ * Besides metrics pushed by steps registers gauges of shared caches, rate limit and publish queue.
+ */
+final class MetricsPluginSink implements PluginMetrics.Sink {
+
+    private final MetricRegistry registry;
+
+    MetricsPluginSink() {
+        this(Metrics.metricRegistry());
+    }
+
+    MetricsPluginSink(final MetricRegistry registry) {
+        this.registry = registry;
+        gauge("github.rate-limit.remaining", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return ServiceRegistry.getGitHubRateLimitGovernor().getRemaining();
+            }
+        });
+        gauge("github.rate-limit.waits", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return ServiceRegistry.getGitHubRateLimitGovernor().getWaits();
+            }
+        });
+        gauge("github.publish.depth", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return ServiceRegistry.getPublishQueue().getDepth();
+            }
+        });
+        gauge("github.client-cache.hits", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return ServiceRegistry.getGitHubClientCache().getHits();
+            }
+        });
+        gauge("github.client-cache.misses", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return ServiceRegistry.getGitHubClientCache().getMisses();
+            }
+        });
+        gauge("sonar.coverage-cache.hits", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return SonarCache.SHARED.getCoverage().getHits() + SonarCache.SHARED.getCoverage().getStaleHits();
+            }
+        });
+        gauge("sonar.coverage-cache.misses", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return SonarCache.SHARED.getCoverage().getMisses();
+            }
+        });
+    }
+
+    /**
+     * Registry outlives plugin classes (reload), so keep gauge if already registered.
+     */
+    private void gauge(final String name, final Gauge<?> gauge) {
+        if (!registry.getNames().contains(PluginMetrics.PREFIX + name)) {
+            registry.register(PluginMetrics.PREFIX + name, gauge);
+        }
+    }
+
+    @Override
+    public void count(final String name, final long n) {
+        registry.counter(PluginMetrics.PREFIX + name).inc(n);
+    }
+
+    @Override
+    public void histogram(final String name, final long value) {
+        registry.histogram(PluginMetrics.PREFIX + name).update(value);
+    }
+
+    @Override
+    public void time(final String name, final long millis) {
+        registry.timer(PluginMetrics.PREFIX + name).update(millis, TimeUnit.MILLISECONDS);
+    }
+
+}
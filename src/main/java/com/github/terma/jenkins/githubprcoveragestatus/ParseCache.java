@@ -0,0 +1,299 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Agent side cache of parsed reports, so report which is not changed since last step
+ * (master and compare steps in one build, repeated builds on persistent agent) is never parsed twice.
+ * <p>
+ * Entry is keyed by report path and parser settings, and valid only if report has the same
+ * size, modification time and CRC32 of content. Content is checked only if size and time match,
+ * as CRC32 of report is much cheaper than parsing it but still needs to read it. Report which
+ * is not in cache is parsed by {@link #parse(String, File, CoverageReportParser)}, which takes
+ * CRC32 of the same stream parser reads, so missed report is read once.
+ * <p>
+ * Caching pays off only if parser reads whole report anyway (Jacoco, PHPUnit Clover). Parser which
+ * stops early (Cobertura root element, Java Clover project metrics) reads less than checksum would,
+ * so if parser read less than half of report it's kept as {@link #PARTIAL} entry: report is neither
+ * read to the end nor checked later, {@link #get(String, File)} just leaves it to parser.
+ * <p>
+ * Cache is shared by parallel parse threads, lock is held only to access entries and counters,
+ * never while report is read.
+ * <p>
+ * Kept in <code>workspace@tmp</code> (same place Jenkins keeps temp files of workspace),
+ * not more than {@link #MAX_ENTRIES} least recently used. Cache is best effort,
+ * any problem with it means reports are just parsed.
+ * <pre>
+ * int magic, byte version, int entries,
+ * entries * (UTF key, long size, long modified, long crc, {@link CoverageCounts})
+ * </pre>
+ */
+final class ParseCache {
+
+    static final String DISABLE_PROPERTY = "githubprcoveragestatus.disableParseCache";
+    static final String FILE_NAME = "github-pr-coverage-status-parse-cache.bin";
+    static final int MAX_ENTRIES = 1000;
+
+    private static final int MAGIC = 0x47504350;
+    private static final byte VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * CRC of entry of report which parser reads only partially, never equal to CRC32 of content.
+     */
+    static final long PARTIAL = -1;
+
+    private final File file;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private int hits;
+    private int misses;
+    private boolean changed;
+
+    private static final class Entry {
+
+        private final long size;
+        private final long modified;
+        private final long crc;
+        private final CoverageCounts counts;
+
+        private Entry(long size, long modified, long crc, CoverageCounts counts) {
+            this.size = size;
+            this.modified = modified;
+            this.crc = crc;
+            this.counts = counts;
+        }
+
+    }
+
+    private ParseCache(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Same as <code>WorkspaceList.tempDir</code>, which is not available on agent.
+     */
+    static File getTempDir(final File workspace) {
+        return new File(workspace.getPath() + "@tmp");
+    }
+
+    /**
+     * @return cache of workspace, empty if there is no cache yet or it can't be read
+     */
+    static ParseCache load(final File workspace) {
+        final ParseCache cache = new ParseCache(new File(getTempDir(workspace), FILE_NAME));
+        if (!cache.file.exists()) return cache;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache.file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) return cache;
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final String key = in.readUTF();
+                cache.entries.put(key, new Entry(in.readLong(), in.readLong(), in.readLong(), CoverageCounts.read(in)));
+            }
+        } catch (IOException | RuntimeException e) {
+            // broken or partially written cache, start from scratch
+            cache.entries.clear();
+            cache.changed = true;
+        }
+        return cache;
+    }
+
+    /**
+     * @param key - path of report relative to workspace and parser settings
+     * @return counts of report if it's not changed since cached, otherwise null. Report which
+     * parser reads only partially is counted neither as hit nor as miss
+     */
+    CoverageCounts get(final String key, final File report) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.crc == PARTIAL) return null;
+        final CoverageCounts counts = isValid(entry, report) ? entry.counts : null;
+        synchronized (this) {
+            if (counts != null) hits++;
+            else misses++;
+        }
+        return counts;
+    }
+
+    private static boolean isValid(final Entry entry, final File report) {
+        if (entry == null || entry.size != report.length() || entry.modified != report.lastModified()) return false;
+        try {
+            return entry.crc == checksum(report);
+        } catch (IOException e) {
+            // parser will tell what is wrong with report
+            return false;
+        }
+    }
+
+    /**
+     * Parse report and put counts to cache. CRC32 is taken from stream which parser reads,
+     * rest of report after parser stopped is read only for CRC32, unless parser read less
+     * than half of report, then it's cached as {@link #PARTIAL} and rest is not read.
+     */
+    CoverageCounts parse(final String key, final File report, final CoverageReportParser parser) {
+        final long size = report.length();
+        final long modified = report.lastModified();
+        final String path = report.getAbsolutePath();
+        final CoverageCounts counts;
+        final long crc;
+        try (CheckedInputStream in = new CheckedInputStream(ReportInput.open(path), new CRC32())) {
+            final long[] read = new long[1];
+            counts = parser.get(path, new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (b >= 0) read[0]++;
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int n = super.read(b, off, len);
+                    if (n > 0) read[0] += n;
+                    return n;
+                }
+
+                @Override
+                public long skip(final long n) throws IOException {
+                    final long skipped = super.skip(n);
+                    read[0] += skipped;
+                    return skipped;
+                }
+
+                @Override
+                public void close() {
+                    // closed after rest of report is read for checksum
+                }
+            });
+            if (read[0] < size / 2) {
+                put(key, size, modified, PARTIAL, counts);
+                return counts;
+            }
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) >= 0) {
+                // only for checksum
+            }
+            crc = in.getChecksum().getValue();
+        } catch (IOException e) {
+            // report can't be read, parser will tell what is wrong with it
+            return parser.get(path);
+        }
+        put(key, size, modified, crc, counts);
+        return counts;
+    }
+
+    /**
+     * Put counts of report parsed other way, report is read again for checksum. Call right after
+     * report is parsed, so it's most likely still in page cache.
+     */
+    void put(final String key, final File report, final CoverageCounts counts) {
+        final long size = report.length();
+        final long modified = report.lastModified();
+        final long crc;
+        try {
+            crc = checksum(report);
+        } catch (IOException e) {
+            return;
+        }
+        put(key, size, modified, crc, counts);
+    }
+
+    private synchronized void put(final String key, final long size, final long modified, final long crc,
+                                  final CoverageCounts counts) {
+        entries.put(key, new Entry(size, modified, crc, counts));
+        changed = true;
+    }
+
+    static long checksum(final File report) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = ReportInput.open(report.getPath())) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) crc.update(buffer, 0, read);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Write cache if anything is changed. Cache is written to temp file and moved,
+     * so parallel step in the same workspace never sees partially written cache.
+     */
+    synchronized void save() {
+        if (!changed) return;
+        final File dir = file.getParentFile();
+        File temp = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            temp = File.createTempFile(FILE_NAME, ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(entries.size());
+                for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); i.hasNext(); ) {
+                    final Map.Entry<String, Entry> entry = i.next();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().modified);
+                    out.writeLong(entry.getValue().crc);
+                    entry.getValue().counts.write(out);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException | RuntimeException e) {
+            // next step will parse reports again
+            if (temp != null && !temp.delete()) temp.deleteOnExit();
+        }
+    }
+
+    synchronized int getHits() {
+        return hits;
+    }
+
+    synchronized int getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.PluginWrapper;
+import hudson.init.InitMilestone;
+import jenkins.model.Jenkins;
+
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counters, histograms and timers of plugin published to
+ * <a href="https://plugins.jenkins.io/metrics/">Metrics plugin</a> if it's installed,
+ * otherwise all calls do nothing. Dependency is optional, so classes of Metrics plugin are
+ * touched only by {@link MetricsPluginSink} which is loaded after plugin is found.
+ * <p>
+ * All names get prefix {@link #PREFIX}, for example <code>github-pr-coverage-status.stage.build-coverage</code>
+ */
+final class PluginMetrics {
+
+    static final String PREFIX = "github-pr-coverage-status.";
+
+    private static final Logger LOGGER = Logger.getLogger(PluginMetrics.class.getName());
+    private static final String METRICS_PLUGIN = "metrics";
+
+    interface Sink {
+
+        void count(String name, long n);
+
+        void histogram(String name, long value);
+
+        void time(String name, long millis);
+
+    }
+
+    static final Sink NONE = new Sink() {
+        @Override
+        public void count(String name, long n) {
+        }
+
+        @Override
+        public void histogram(String name, long value) {
+        }
+
+        @Override
+        public void time(String name, long millis) {
+        }
+    };
+
+    private static volatile Sink sink;
+
+    private PluginMetrics() {
+        throw new UnsupportedOperationException("Util class!");
+    }
+
+    /**
+     * Sink is detected once Jenkins is started, before it Metrics plugin could be not active yet,
+     * so absence of it is not remembered.
+     */
+    private static Sink getSink() {
+        Sink current = sink;
+        if (current == null) {
+            final Jenkins jenkins = Jenkins.getInstanceOrNull();
+            current = detect(jenkins);
+            if (current != NONE || (jenkins != null && jenkins.getInitLevel() == InitMilestone.COMPLETED)) {
+                sink = current;
+            }
+        }
+        return current;
+    }
+
+    private static Sink detect(final Jenkins jenkins) {
+        // on agent or in unit tests
+        if (jenkins == null) return NONE;
+        final PluginWrapper plugin = jenkins.getPluginManager().getPlugin(METRICS_PLUGIN);
+        if (plugin == null || !plugin.isActive()) return NONE;
+        try {
+            return new MetricsPluginSink();
+        } catch (LinkageError | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Can't publish metrics to " + METRICS_PLUGIN + " plugin", e);
+            return NONE;
+        }
+    }
+
+    /**
+     * For tests, null to detect again
+     */
+    static void setSink(final Sink sink) {
+        PluginMetrics.sink = sink;
+    }
+
+    static void count(final String name, final long n) {
+        getSink().count(name, n);
+    }
+
+    static void histogram(final String name, final long value) {
+        getSink().histogram(name, value);
+    }
+
+    static void time(final String name, final long millis) {
+        getSink().time(name, millis);
+    }
+
+    /**
+     * Stage <code>build coverage</code> becomes <code>build-coverage</code>
+     */
+    static String toName(final String text) {
+        return text.trim().toLowerCase().replaceAll("[^a-z0-9.]+", "-");
+    }
+
+    /**
+     * Publish everything collected by step.
+     */
+    static void record(final BuildMetricsAction metrics) {
+        final Sink current = getSink();
+        if (current == NONE) return;
+        for (Map.Entry<String, Long> stage : metrics.getStages().entrySet()) {
+            current.time("stage." + toName(stage.getKey()), stage.getValue());
+        }
+        current.time("scan", metrics.getScanMillis());
+        current.histogram("scan.directories", metrics.getVisitedDirectories());
+        for (ReportStats.Format format : metrics.getReports().getFormats()) {
+            final String name = "reports." + toName(format.getName());
+            current.count(name + ".files", format.getFiles());
+            current.histogram(name + ".bytes", format.getBytes());
+            current.time(name + ".parse", format.getParseMillis());
+        }
+    }
+
+}
@@ -18,12 +18,13 @@ limitations under the License.
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import hudson.EnvVars;
+import hudson.model.Action;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import org.kohsuke.github.GHPullRequest;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.reflect.Method;
 import java.util.Map;
 
 public class PrIdAndUrlUtils {
@@ -33,12 +34,17 @@ public class PrIdAndUrlUtils {
      */
     public static final String GIT_URL_PROPERTY = "GIT_URL";
     public static final String GIT_BRANCH_PROPERTY = "GIT_BRANCH";
+    public static final String GIT_COMMIT_PROPERTY = "GIT_COMMIT";
 
     /**
      * Injected by
      * https://plugins.jenkins.io/ghprb/
      */
     public static final String GIT_PR_ID_ENV_PROPERTY = "ghprbPullId";
+    /**
+     * Head of PR, when GHPRB builds merge commit {@link #GIT_COMMIT_PROPERTY} is not part of PR
+     */
+    public static final String GIT_PR_COMMIT_ENV_PROPERTY = "ghprbActualCommit";
     public static final String CHANGE_ID_PROPERTY = "CHANGE_ID";
     public static final String CHANGE_URL_PROPERTY = "CHANGE_URL";
 
@@ -61,8 +67,7 @@ public class PrIdAndUrlUtils {
         final String branch = scmVars.get("GIT_BRANCH");
         final String sha = scmVars.get("GIT_COMMIT");
         buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + String.format("Attempt to discover PR for %s @ %s", branch, sha));
-        GHPullRequest gitPr = ServiceRegistry.getPullRequestRepository().getPullRequestFor(url, branch, sha);
-        int id = gitPr.getNumber();
+        final int id = ServiceRegistry.getPullRequestRepository().getPullRequestId(url, branch, sha);
         buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + String.format("Discovered PR %d", id));
         return id;
     }
@@ -98,4 +103,54 @@ public class PrIdAndUrlUtils {
                     + " or " + CHANGE_URL_PROPERTY + " in envs: " + envVars);
     }
 
+    /**
+     * @return SHA of built commit from scmVars or build environment, null if unknown
+     */
+    public static String getCommitSha(final Map<String, String> scmVars, final Run build, final TaskListener listener) throws IOException, InterruptedException {
+        if (scmVars != null && scmVars.get(GIT_COMMIT_PROPERTY) != null) return scmVars.get(GIT_COMMIT_PROPERTY);
+        return build.getEnvironment(listener).get(GIT_COMMIT_PROPERTY);
+    }
+
+    /**
+     * Branch source PR build by default checks out local merge of PR and target branch,
+     * so {@link #GIT_COMMIT_PROPERTY} is not on GitHub. PR head is taken from
+     * GHPRB {@link #GIT_PR_COMMIT_ENV_PROPERTY} or from SCM revision of build, for other
+     * PR builds with {@link #CHANGE_ID_PROPERTY} null is returned, so caller asks GitHub.
+     *
+     * @return SHA of PR head commit which was built, null if unknown
+     */
+    public static String getPrHeadSha(final Map<String, String> scmVars, final Run build, final TaskListener listener) throws IOException, InterruptedException {
+        final EnvVars envVars = build.getEnvironment(listener);
+        final String prCommit = envVars.get(GIT_PR_COMMIT_ENV_PROPERTY);
+        if (prCommit != null) return prCommit;
+        final String revisionHead = getPullRequestRevisionHead(build);
+        if (revisionHead != null) return revisionHead;
+        if (envVars.get(CHANGE_ID_PROPERTY) != null) return null;
+        return getCommitSha(scmVars, build, listener);
+    }
+
+    /**
+     * Plugin doesn't depend on SCM API and GitHub Branch Source, so <code>SCMRevisionAction</code>
+     * with <code>PullRequestSCMRevision</code> is read by reflection. Action is persisted with build,
+     * so only persisted actions are checked.
+     *
+     * @return PR head of build SCM revision, null if build has no PR revision
+     */
+    @SuppressWarnings("deprecation")
+    static String getPullRequestRevisionHead(final Run<?, ?> build) {
+        for (Action action : build.getActions()) {
+            if (action == null || !"SCMRevisionAction".equals(action.getClass().getSimpleName())) continue;
+            try {
+                final Object revision = action.getClass().getMethod("getRevision").invoke(action);
+                if (revision == null) continue;
+                final Method pullHash = revision.getClass().getMethod("getPullHash");
+                final Object sha = pullHash.invoke(revision);
+                if (sha instanceof String) return (String) sha;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // not PR revision
+            }
+        }
+        return null;
+    }
+
 }
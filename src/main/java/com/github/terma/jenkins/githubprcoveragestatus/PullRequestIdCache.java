@@ -0,0 +1,94 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Controller wide short living cache of PR number by repository and branch.
+ * <p>
+ * Entry remembers head SHA it was found for, so new push to branch is looked up again
+ * (one request), while repeated builds of same commit (rebuilds, many steps in one pipeline)
+ * don't touch GitHub at all. TTL is short as PR could be closed and reopened for same branch.
+ */
+final class PullRequestIdCache {
+
+    static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Expired entries are removed when cache grows over this size.
+     */
+    private static final int PURGE_SIZE = 1024;
+
+    private static final class Entry {
+        private final int id;
+        private final String sha;
+        private final long expiresAt;
+
+        private Entry(int id, String sha, long expiresAt) {
+            this.id = id;
+            this.sha = sha;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    PullRequestIdCache(final long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    private static String toKey(final String repo, final String branch) {
+        return repo + "\n" + branch;
+    }
+
+    /**
+     * @return PR number or null if not cached, expired or cached for other head SHA
+     */
+    Integer get(final String repo, final String branch, final String sha) {
+        return get(repo, branch, sha, System.currentTimeMillis());
+    }
+
+    Integer get(final String repo, final String branch, final String sha, final long now) {
+        final Entry entry = entries.get(toKey(repo, branch));
+        if (entry == null || entry.expiresAt <= now || !entry.sha.equals(sha)) return null;
+        return entry.id;
+    }
+
+    void put(final String repo, final String branch, final String sha, final int id) {
+        put(repo, branch, sha, id, System.currentTimeMillis());
+    }
+
+    void put(final String repo, final String branch, final String sha, final int id, final long now) {
+        if (entries.size() >= PURGE_SIZE) {
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expiresAt <= now) iterator.remove();
+            }
+        }
+        entries.put(toKey(repo, branch), new Entry(id, sha, now + ttlMillis));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+}
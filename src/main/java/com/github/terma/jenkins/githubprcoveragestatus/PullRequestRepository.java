@@ -18,19 +18,39 @@ limitations under the License.
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import org.kohsuke.github.GHCommitState;
-import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHRepository;
 
 import java.io.IOException;
 
 interface PullRequestRepository {
 
-    GHPullRequest getPullRequestFor(String repo, String branch, String sha) throws IOException;
+    /**
+     * @return number of open pull request with head at branch and SHA
+     */
+    int getPullRequestId(String repo, String branch, String sha) throws IOException;
 
     GHRepository getGitHubRepository(final String gitHubUrl) throws IOException;
 
+    /**
+     * @return SHA of merge base of pull request head and its base branch
+     */
+    String getMergeBase(GHRepository ghRepository, int prId) throws IOException;
+
+    /**
+     * @return SHA of current head commit of pull request
+     */
+    String getHeadSha(GHRepository ghRepository, int prId) throws IOException;
+
     void comment(GHRepository ghRepository, int prId, String message) throws IOException;
 
+    /**
+     * Update comment of pull request which contains marker or add new one if there is no such comment
+     *
+     * @param marker  - text which identifies comment, should be part of message
+     * @param message - full text of comment
+     */
+    void upsertComment(GHRepository ghRepository, int prId, String marker, String message) throws IOException;
+
     void createCommitStatus(
             GHRepository ghRepository,
             String sha1,
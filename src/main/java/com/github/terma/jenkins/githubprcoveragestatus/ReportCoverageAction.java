@@ -6,16 +6,29 @@ import jenkins.model.RunAction2;
 public class ReportCoverageAction implements RunAction2 {
 
     private final String text;
+    private final CoverageDiff diff;
     private transient Run run;
 
     public ReportCoverageAction(String text) {
+        this(text, null);
+    }
+
+    public ReportCoverageAction(String text, CoverageDiff diff) {
         this.text = text;
+        this.diff = diff;
     }
 
     public String getText() {
         return text;
     }
 
+    /**
+     * @return files which lost coverage, null for builds made before per file diff
+     */
+    public CoverageDiff getDiff() {
+        return diff;
+    }
+
     @Override
     public String getDisplayName() {
         return "Coverage comparison";
@@ -0,0 +1,149 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte stream over coverage report for streaming parsers (StAX, Jackson), report is never
+ * decoded to <code>String</code>, parser decodes only what it looks at.
+ * <p>
+ * Big reports are memory mapped by windows of {@link #WINDOW_SIZE}, so bytes are copied
+ * from page cache straight to parser buffer, no intermediate buffer in heap and heap usage
+ * doesn't depend on report size. Mapped pages are not heap and could be reclaimed by OS
+ * any time, which is what we need on memory constrained agents.
+ * <p>
+ * Small reports are read through buffered channel as mapping costs more than reading them.
+ * On Windows mapped file can't be deleted till buffer is collected (workspace cleanup
+ * would fail), so mapping is never used there. Mapping could be disabled by system property
+ * {@link #DISABLE_MMAP_PROPERTY} if agent limits virtual memory.
+ */
+final class ReportInput {
+
+    static final String DISABLE_MMAP_PROPERTY = "githubprcoveragestatus.disableMmap";
+    static final long MAP_THRESHOLD = 1024 * 1024;
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final boolean MMAP = !Boolean.getBoolean(DISABLE_MMAP_PROPERTY)
+            && !System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private ReportInput() {
+        throw new UnsupportedOperationException("Util class!");
+    }
+
+    static InputStream open(final String path) throws IOException {
+        return open(path, MMAP, MAP_THRESHOLD, WINDOW_SIZE);
+    }
+
+    static InputStream open(final String path, final boolean mmap, final long threshold, final int windowSize)
+            throws IOException {
+        final FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            if (mmap && channel.size() >= threshold) return new MappedInputStream(channel, windowSize);
+            return new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads file by mapping consecutive windows, only one window is referenced at a time.
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long size;
+        private final int windowSize;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        private MappedInputStream(final FileChannel channel, final int windowSize) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowSize = windowSize;
+            map(0);
+        }
+
+        private void map(final long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+        }
+
+        /**
+         * @return false if end of file
+         */
+        private boolean ensure() throws IOException {
+            if (window.hasRemaining()) return true;
+            final long next = windowStart + window.capacity();
+            if (next >= size) return false;
+            map(next);
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensure()) return -1;
+            return window.get() & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            if (!ensure()) return -1;
+            final int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= 0) return 0;
+            final long position = windowStart + window.position();
+            final long target = Math.min(size, position + n);
+            if (target < windowStart + window.capacity()) {
+                window.position((int) (target - windowStart));
+            } else {
+                // empty window at the end if skipped to end of file
+                map(target);
+            }
+            return target - position;
+        }
+
+        @Override
+        public int available() {
+            final long left = size - windowStart - window.position();
+            return (int) Math.min(Integer.MAX_VALUE, left);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+    }
+
+}
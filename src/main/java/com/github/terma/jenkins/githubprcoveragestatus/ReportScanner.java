@@ -0,0 +1,183 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Walk workspace to find coverage reports by file name.
+ * <p>
+ * Unlike <code>**&#47;name</code> patterns for {@link org.apache.tools.ant.DirectoryScanner}
+ * walk starts only from configured roots and excluded directories are pruned before descending,
+ * so huge trees like <code>node_modules</code> are never listed.
+ * <p>
+ * Symbolic links to directories are not followed.
+ * <p>
+ * {@link #DEFAULT_EXCLUDES} are not applied to root which explicitly points inside of
+ * excluded directory, like <code>vendor/acme/target</code>, configured excludes always are.
+ */
+class ReportScanner {
+
+    /**
+     * Directories which never contain coverage reports but could be really big.
+     */
+    public static final String DEFAULT_EXCLUDES = "**/node_modules/**,**/bower_components/**,**/.git/**,"
+            + "**/.svn/**,**/.hg/**,**/.gradle/**,**/build/tmp/**,**/vendor/**,**/.idea/**";
+
+    private final File workspace;
+    private final List<String> roots;
+    private final List<String> defaultExcludes;
+    private final List<String> excludes;
+    private final Collection<String> fileNames;
+
+    private int visitedDirectories;
+    private int prunedDirectories;
+
+    /**
+     * @param workspace - base directory, all paths are relative to it
+     * @param roots     - comma separated directories to start from, blank means whole workspace
+     * @param excludes  - comma separated Ant patterns, applied in addition to {@link #DEFAULT_EXCLUDES}
+     *                  (see class doc when default excludes are not applied)
+     * @param fileNames - names of report files to find
+     */
+    ReportScanner(final File workspace, final String roots, final String excludes, final Collection<String> fileNames) {
+        this.workspace = workspace;
+        this.roots = split(roots);
+        if (this.roots.isEmpty()) this.roots.add("");
+        this.defaultExcludes = split(DEFAULT_EXCLUDES);
+        this.excludes = split(excludes);
+        this.fileNames = fileNames;
+    }
+
+    private static List<String> split(final String value) {
+        final List<String> result = new ArrayList<>();
+        if (value == null) return result;
+        for (String item : StringUtils.split(value, ",\n")) {
+            item = normalize(item.trim());
+            if (!item.isEmpty()) result.add(item);
+        }
+        return result;
+    }
+
+    private static String normalize(final String path) {
+        String result = path.replace('\\', '/');
+        while (result.startsWith("./")) result = result.substring(2);
+        while (result.endsWith("/")) result = result.substring(0, result.length() - 1);
+        return result;
+    }
+
+    /**
+     * @return relative to workspace paths of found reports in sorted order
+     */
+    List<String> scan() throws IOException {
+        final TreeSet<String> found = new TreeSet<>();
+        final Path base = workspace.toPath();
+        for (final String root : roots) {
+            final Path start = root.isEmpty() ? base : base.resolve(root).normalize();
+            if (!start.startsWith(base) || !Files.isDirectory(start)) continue;
+            final List<String> rootExcludes = getExcludes(relative(base, start));
+
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    final String path = relative(base, dir);
+                    if (!path.isEmpty() && isExcludedDirectory(rootExcludes, path)) {
+                        prunedDirectories++;
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    visitedDirectories++;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && fileNames.contains(file.getFileName().toString())) {
+                        final String path = relative(base, file);
+                        if (!isExcluded(rootExcludes, path)) found.add(path);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // unreadable directory or file can't contain report we could parse
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return Collections.unmodifiableList(new ArrayList<>(found));
+    }
+
+    private static String relative(final Path base, final Path path) {
+        return base.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * @return configured excludes and default ones which don't exclude root itself
+     */
+    private List<String> getExcludes(final String root) {
+        final List<String> result = new ArrayList<>(excludes);
+        for (String exclude : defaultExcludes) {
+            if (root.isEmpty() || !isExcludedDirectory(Collections.singletonList(exclude), root)) result.add(exclude);
+        }
+        return result;
+    }
+
+    /**
+     * Directory is pruned when it matches exclude pattern or everything inside it is excluded
+     * like for <code>**&#47;node_modules/**</code>
+     */
+    private static boolean isExcludedDirectory(final List<String> excludes, final String path) {
+        for (String exclude : excludes) {
+            if (SelectorUtils.matchPath(exclude, path)) return true;
+            if (exclude.endsWith("/**")
+                    && SelectorUtils.matchPath(exclude.substring(0, exclude.length() - 3), path)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isExcluded(final List<String> excludes, final String path) {
+        for (String exclude : excludes) {
+            if (SelectorUtils.matchPath(exclude, path)) return true;
+        }
+        return false;
+    }
+
+    int getVisitedDirectories() {
+        return visitedDirectories;
+    }
+
+    int getPrunedDirectories() {
+        return prunedDirectories;
+    }
+
+}
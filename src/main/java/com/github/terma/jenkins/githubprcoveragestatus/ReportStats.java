@@ -0,0 +1,111 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Files, bytes and parse time of coverage reports per format (jacoco, cobertura etc.).
+ * Collected on agent while reports are parsed in parallel and sent back with coverage counts.
+ * Public as shown on build page by {@link BuildMetricsAction}.
+ */
+public final class ReportStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Format> formats = new TreeMap<>();
+
+    public static final class Format implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private long files;
+        private long bytes;
+        private long parseNanos;
+
+        private Format(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getParseMillis() {
+            return parseNanos / 1_000_000;
+        }
+
+    }
+
+    /**
+     * Thread safe, called by parse threads.
+     */
+    synchronized void add(final String format, final long bytes, final long parseNanos) {
+        Format stats = formats.get(format);
+        if (stats == null) {
+            stats = new Format(format);
+            formats.put(format, stats);
+        }
+        stats.files++;
+        stats.bytes += bytes;
+        stats.parseNanos += parseNanos;
+    }
+
+    public synchronized List<Format> getFormats() {
+        return new ArrayList<>(formats.values());
+    }
+
+    public synchronized long getFiles() {
+        long files = 0;
+        for (Format format : formats.values()) files += format.files;
+        return files;
+    }
+
+    public synchronized long getBytes() {
+        long bytes = 0;
+        for (Format format : formats.values()) bytes += format.bytes;
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("reports:");
+        if (formats.isEmpty()) sb.append(" none");
+        String separator = " ";
+        for (Format format : formats.values()) {
+            sb.append(separator).append(format.name).append(' ').append(format.files).append(" file(s) ")
+                    .append(format.bytes).append(" bytes ").append(format.getParseMillis()).append(" ms");
+            separator = ", ";
+        }
+        return sb.toString();
+    }
+
+}
@@ -17,6 +17,9 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
+import jenkins.model.Jenkins;
+
+import java.io.File;
 import java.io.PrintStream;
 
 public class ServiceRegistry {
@@ -25,6 +28,18 @@ public class ServiceRegistry {
     private static CoverageRepository coverageRepository;
     private static SettingsRepository settingsRepository;
     private static PullRequestRepository pullRequestRepository;
+    private static BaselineStore baselineStore;
+    private static GitHubPublishQueue publishQueue;
+
+    private static final PullRequestRepository GITHUB_PULL_REQUEST_REPOSITORY = new GitHubPullRequestRepository();
+    private static final GitHubClientCache GITHUB_CLIENT_CACHE = new GitHubClientCache(GitHubClientCache.DEFAULT_FACTORY);
+    private static final PullRequestIdCache PULL_REQUEST_ID_CACHE = new PullRequestIdCache(
+            PullRequestIdCache.DEFAULT_TTL_MILLIS);
+    private static final GitHubPublishQueue PUBLISH_QUEUE = new GitHubPublishQueue(
+            GitHubPublishQueue.pool(GitHubPublishQueue.DEFAULT_WORKERS),
+            GitHubPublishQueue.DEFAULT_MAX_ATTEMPTS, GitHubPublishQueue.DEFAULT_BACKOFF_MILLIS);
+    private static final GitHubRateLimitGovernor GITHUB_RATE_LIMIT_GOVERNOR = new GitHubRateLimitGovernor(
+            GitHubRateLimitGovernor.DEFAULT_MAX_WAIT_MILLIS, GitHubRateLimitGovernor.SYSTEM_CLOCK);
 
     public static MasterCoverageRepository getMasterCoverageRepository(PrintStream buildLog, final String login, final String password) {
         if (masterCoverageRepository != null) return masterCoverageRepository;
@@ -53,10 +68,16 @@ public class ServiceRegistry {
 
     public static CoverageRepository getCoverageRepository(
             final boolean disableSimpleCov,
-            final String jacocoCoverageCounter
+            final String jacocoCoverageCounter,
+            final int parseParallelism,
+            final String reportRoots,
+            final String reportExcludes,
+            final PrintStream buildLog,
+            final BuildMetricsAction metrics
     ) {
         return coverageRepository != null ? coverageRepository
-                : new GetCoverageCallable(disableSimpleCov, jacocoCoverageCounter);
+                : new GetCoverageCallable(disableSimpleCov, jacocoCoverageCounter, parseParallelism,
+                reportRoots, reportExcludes, buildLog, metrics);
     }
 
     public static void setCoverageRepository(CoverageRepository coverageRepository) {
@@ -72,10 +93,40 @@ public class ServiceRegistry {
     }
 
     public static PullRequestRepository getPullRequestRepository() {
-        return pullRequestRepository != null ? pullRequestRepository : new GitHubPullRequestRepository();
+        return pullRequestRepository != null ? pullRequestRepository : GITHUB_PULL_REQUEST_REPOSITORY;
     }
 
     public static void setPullRequestRepository(PullRequestRepository pullRequestRepository) {
         ServiceRegistry.pullRequestRepository = pullRequestRepository;
     }
+
+    static BaselineStore getBaselineStore() {
+        return baselineStore != null ? baselineStore : new BaselineStore(
+                new File(Jenkins.get().getRootDir(), "github-pr-coverage-status/baselines"),
+                getSettingsRepository().getBaselineRetention());
+    }
+
+    static void setBaselineStore(BaselineStore baselineStore) {
+        ServiceRegistry.baselineStore = baselineStore;
+    }
+
+    static GitHubClientCache getGitHubClientCache() {
+        return GITHUB_CLIENT_CACHE;
+    }
+
+    static PullRequestIdCache getPullRequestIdCache() {
+        return PULL_REQUEST_ID_CACHE;
+    }
+
+    static GitHubRateLimitGovernor getGitHubRateLimitGovernor() {
+        return GITHUB_RATE_LIMIT_GOVERNOR;
+    }
+
+    static GitHubPublishQueue getPublishQueue() {
+        return publishQueue != null ? publishQueue : PUBLISH_QUEUE;
+    }
+
+    static void setPublishQueue(GitHubPublishQueue publishQueue) {
+        ServiceRegistry.publishQueue = publishQueue;
+    }
 }
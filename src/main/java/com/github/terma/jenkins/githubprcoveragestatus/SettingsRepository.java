@@ -18,6 +18,16 @@ interface SettingsRepository {
 
     boolean isDisableSimpleCov();
 
+    /**
+     * @return number of threads to parse coverage reports on agent, zero or less means number of agent cores
+     */
+    int getParseParallelism();
+
+    /**
+     * @return master baselines to keep for each repository, zero or less means default
+     */
+    int getBaselineRetention();
+
     String getSonarUrl();
 
     String getSonarToken();
@@ -1,39 +1,191 @@
 package com.github.terma.jenkins.githubprcoveragestatus;
 
-import com.jayway.jsonpath.JsonPathException;
-import org.apache.commons.io.FileUtils;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * <a href="https://github.com/vicentllongo/simplecov-json">SimpleCov JSON</a>
+ * <p>
+ * Report is read token by token, nothing is materialized. Without per file details
+ * parser stops as soon as <code>metrics.covered_percent</code>, <code>metrics.covered_lines</code>
+ * and <code>metrics.total_lines</code> are found, everything else
+ * (most of report is <code>files[].coverage</code> arrays) is skipped.
+ * Coverage of report is <code>covered_percent</code>, line counts weigh it against other reports
+ * and are returned as {@link CoverageCounts.Type#LINE} counts. Report without line counts provides only ratio.
+ * <p>
+ * With per file details, lines of all <code>files[].coverage</code> arrays are summed
+ * in the same pass (<code>null</code> - not relevant, <code>0</code> - missed, otherwise covered)
+ * and returned as {@link CoverageCounts.Type#LINE} counts instead.
  */
 public class SimpleCovParser implements CoverageReportParser {
 
-    private static final String METRIC_PATH = "$.metrics.covered_percent";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final boolean perFileDetails;
+
+    public SimpleCovParser() {
+        this(false);
+    }
+
+    /**
+     * @param perFileDetails - sum per file line arrays, report will be read till the end
+     */
+    public SimpleCovParser(boolean perFileDetails) {
+        this.perFileDetails = perFileDetails;
+    }
 
     @Override
-    public float get(String simpleCovFilePath) {
-        final String content;
-        try {
-            content = FileUtils.readFileToString(new File(simpleCovFilePath));
+    public CoverageCounts get(String simpleCovFilePath) {
+        try (InputStream in = ReportInput.open(simpleCovFilePath)) {
+            return get(simpleCovFilePath, in);
         } catch (IOException e) {
             throw new IllegalArgumentException(
                     "Can't read SimpleCov report by path: " + simpleCovFilePath);
         }
+    }
+
+    @Override
+    public CoverageCounts get(final String simpleCovFilePath, final InputStream in) {
+        final Report report = new Report();
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw strangeReport(simpleCovFilePath, "Root is not object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("metrics".equals(field) && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                    readMetrics(parser, report);
+                } else if (perFileDetails && "files".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    readFiles(parser, report);
+                } else {
+                    parser.skipChildren();
+                }
+                if (report.isComplete(perFileDetails)) break;
+            }
+        } catch (IOException e) {
+            throw strangeReport(simpleCovFilePath, "Can't parse: " + e.getMessage());
+        }
+
+        if (report.coveredPercent == null) {
+            throw strangeReport(simpleCovFilePath, "Can't find metrics.covered_percent");
+        }
+
+        final float ratio = report.coveredPercent.floatValue() / 100;
+        final CoverageCounts counts;
+        if (report.hasLineCounts()) {
+            counts = CoverageCounts.ofReport(report.metricsCoveredLines,
+                    report.metricsTotalLines - report.metricsCoveredLines, ratio);
+        } else {
+            counts = CoverageCounts.ofRatio(ratio);
+        }
+        if (report.filesRead) {
+            counts.with(CoverageCounts.Type.LINE, report.coveredLines, report.missedLines);
+        } else if (report.hasLineCounts()) {
+            counts.with(CoverageCounts.Type.LINE, report.metricsCoveredLines,
+                    report.metricsTotalLines - report.metricsCoveredLines);
+        }
+        return counts;
+    }
+
+    /**
+     * Parser is on start of metrics object, leaves it on end of object or
+     * right after last of required metrics if nothing else required.
+     */
+    private void readMetrics(final JsonParser parser, final Report report) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("covered_percent".equals(field) && value.isNumeric()) {
+                report.coveredPercent = parser.getDoubleValue();
+            } else if ("covered_lines".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                report.metricsCoveredLines = parser.getLongValue();
+            } else if ("total_lines".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                report.metricsTotalLines = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+                continue;
+            }
+            if (report.isComplete(perFileDetails)) return;
+        }
+        report.metricsRead = true;
+    }
+
+    private static void readFiles(final JsonParser parser, final Report report) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("coverage".equals(field) && value == JsonToken.START_ARRAY) {
+                    readLines(parser, report);
+                } else if ("coverage".equals(field) && value == JsonToken.START_OBJECT) {
+                    // newer SimpleCov: "coverage": {"lines": [...], "branches": [...]}
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String kind = parser.getCurrentName();
+                        if (parser.nextToken() == JsonToken.START_ARRAY && "lines".equals(kind)) {
+                            readLines(parser, report);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        report.filesRead = true;
+    }
+
+    private static void readLines(final JsonParser parser, final Report report) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                if (parser.getLongValue() > 0) report.coveredLines++;
+                else report.missedLines++;
+            } else if (token == null) {
+                throw new IOException("Unexpected end of report");
+            } else {
+                // null - line not relevant, "ignored" - excluded by nocov
+                parser.skipChildren();
+            }
+        }
+    }
 
-        Double covered = extractValueFromPath(content);
-        return covered.floatValue() / 100;
+    private static IllegalArgumentException strangeReport(final String simpleCovFilePath, final String reason) {
+        return new IllegalArgumentException("Strange SimpleCov report!\n" +
+                reason + "\n" +
+                "File path: " + simpleCovFilePath);
     }
 
-    private Double extractValueFromPath(String content) {
-        try {
-            return JsonUtils.findInJson(content, METRIC_PATH);
-        } catch (JsonPathException error) {
-            throw new IllegalArgumentException("Strange SimpleCov report!\n" +
-                    "Can't extract float value by JsonPath: " + METRIC_PATH + "\n" +
-                    "from:\n" + content);
+    private static final class Report {
+
+        Double coveredPercent;
+        Long metricsCoveredLines;
+        Long metricsTotalLines;
+        boolean metricsRead;
+        boolean filesRead;
+        long coveredLines;
+        long missedLines;
+
+        boolean hasLineCounts() {
+            return metricsCoveredLines != null && metricsTotalLines != null
+                    && metricsCoveredLines >= 0 && metricsTotalLines >= metricsCoveredLines;
         }
+
+        /**
+         * Line counts are optional, so metrics are complete when they are found or metrics object is over.
+         */
+        boolean isComplete(final boolean perFileDetails) {
+            return coveredPercent != null
+                    && (metricsRead || (metricsCoveredLines != null && metricsTotalLines != null))
+                    && (!perFileDetails || filesRead);
+        }
+
     }
+
 }
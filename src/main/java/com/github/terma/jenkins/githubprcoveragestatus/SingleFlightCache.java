@@ -0,0 +1,233 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of remote lookups with TTL.
+ * <p>
+ * Concurrent lookups of same key are coalesced, only one caller loads value and others wait for it
+ * (single flight). Value older than TTL but younger than TTL + stale period is returned as is
+ * while fresh value is loaded in background (stale while revalidate), so builds don't wait for
+ * remote service. Failures are not cached, failed background refresh keeps stale value.
+ * Entries older than TTL + stale period are evicted on write, at most once per TTL,
+ * so keys which are not requested anymore don't stay forever.
+ * <p>
+ * Keys are shown in log, so they should not contain credentials.
+ */
+final class SingleFlightCache<K, V> {
+
+    private static final Logger LOGGER = Logger.getLogger(SingleFlightCache.class.getName());
+
+    interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    interface Ticker {
+        long now();
+    }
+
+    static final Ticker SYSTEM_TICKER = new Ticker() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final Executor refreshExecutor;
+    private final Ticker ticker;
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, FutureTask<V>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastEviction = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param ttlMillis       - how long value is returned without reload
+     * @param staleMillis     - how long after TTL value is still returned while reloaded in background
+     * @param refreshExecutor - runs background reload
+     */
+    SingleFlightCache(final long ttlMillis, final long staleMillis, final Executor refreshExecutor, final Ticker ticker) {
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.ticker = ticker;
+    }
+
+    /**
+     * @return cached value or value from loader, exception of loader is thrown as is
+     */
+    V get(final K key, final Loader<V> loader) throws Exception {
+        final Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            final long age = ticker.now() - entry.loadedAt;
+            if (age < ttlMillis) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (age < ttlMillis + staleMillis) {
+                staleHits.incrementAndGet();
+                refresh(key, loader);
+                return entry.value;
+            }
+        }
+
+        misses.incrementAndGet();
+        final FutureTask<V> task = newTask(key, loader);
+        final FutureTask<V> existing = loading.putIfAbsent(key, task);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+        task.run();
+        return await(task);
+    }
+
+    private void refresh(final K key, final Loader<V> loader) {
+        final FutureTask<V> task = newTask(key, loader);
+        if (loading.putIfAbsent(key, task) != null) return;
+        refreshExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                task.run();
+                try {
+                    task.get();
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Can't refresh " + key + ", keep stale value", e);
+                }
+            }
+        });
+    }
+
+    private FutureTask<V> newTask(final K key, final Loader<V> loader) {
+        return new LoadTask(key, loader);
+    }
+
+    private final class LoadTask extends FutureTask<V> {
+
+        private final K key;
+
+        private LoadTask(final K key, final Loader<V> loader) {
+            super(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                    final V value = loader.load();
+                    put(key, value);
+                    return value;
+                }
+            });
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            loading.remove(key, this);
+        }
+
+    }
+
+    private static <V> V await(final FutureTask<V> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Put value, drops entries which are older than TTL + stale period.
+     */
+    void put(final K key, final V value) {
+        final long now = ticker.now();
+        entries.put(key, new Entry<>(value, now));
+        evictExpired(now);
+    }
+
+    private void evictExpired(final long now) {
+        final long last = lastEviction.get();
+        if (now - last < ttlMillis || !lastEviction.compareAndSet(last, now)) return;
+        final Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().loadedAt >= ttlMillis + staleMillis) iterator.remove();
+        }
+    }
+
+    void invalidate() {
+        entries.clear();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getStaleHits() {
+        return staleHits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return lookups which waited for load started by other caller
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlightCache{size=" + entries.size() + ", hits=" + hits + ", staleHits=" + staleHits
+                + ", misses=" + misses + ", coalesced=" + coalesced + "}";
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Controller wide cache of Sonar lookups, shared by builds so concurrent PR builds
+ * of same repository make at most one request per lookup.
+ * Keys include Sonar URL and login, so projects visible for one user are not shown for other.
+ * Login could be token, so it's part of key only as hash and never shown.
+ */
+final class SonarCache {
+
+    static final long PROJECT_TTL_MILLIS = 60 * 60 * 1000;
+    static final long PROJECT_STALE_MILLIS = 24 * 60 * 60 * 1000;
+    static final long COVERAGE_TTL_MILLIS = 60 * 1000;
+    static final long COVERAGE_STALE_MILLIS = 10 * 60 * 1000;
+
+    static final SonarCache SHARED = new SonarCache(daemonExecutor(), SingleFlightCache.SYSTEM_TICKER);
+
+    private final SingleFlightCache<SonarCache.Key, String> projects;
+    private final SingleFlightCache<SonarCache.Key, Float> coverage;
+
+    SonarCache(final Executor refreshExecutor, final SingleFlightCache.Ticker ticker) {
+        projects = new SingleFlightCache<>(PROJECT_TTL_MILLIS, PROJECT_STALE_MILLIS, refreshExecutor, ticker);
+        coverage = new SingleFlightCache<>(COVERAGE_TTL_MILLIS, COVERAGE_STALE_MILLIS, refreshExecutor, ticker);
+    }
+
+    private static ExecutorService daemonExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "github-pr-coverage-status-sonar-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    static Key key(final String sonarUrl, final String login, final String name) {
+        return new Key(sonarUrl, login == null ? "anonymous" : sha256(login), name);
+    }
+
+    private static String sha256(final String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sonar URL, hash of login and repository name or project key.
+     * {@link #toString()} shows only URL and name, so key could be logged.
+     */
+    static final class Key {
+
+        private final String sonarUrl;
+        private final String loginHash;
+        private final String name;
+
+        private Key(final String sonarUrl, final String loginHash, final String name) {
+            this.sonarUrl = sonarUrl;
+            this.loginHash = loginHash;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return sonarUrl.equals(key.sonarUrl) && loginHash.equals(key.loginHash) && name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sonarUrl.hashCode();
+            result = 31 * result + loginHash.hashCode();
+            result = 31 * result + name.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return sonarUrl + " " + name;
+        }
+
+    }
+
+    /**
+     * Project key by repository name
+     */
+    SingleFlightCache<SonarCache.Key, String> getProjects() {
+        return projects;
+    }
+
+    /**
+     * Coverage from 0 to 1 by project key
+     */
+    SingleFlightCache<SonarCache.Key, Float> getCoverage() {
+        return coverage;
+    }
+
+    @Override
+    public String toString() {
+        return "SonarCache{projects=" + projects + ", coverage=" + coverage + "}";
+    }
+
+}
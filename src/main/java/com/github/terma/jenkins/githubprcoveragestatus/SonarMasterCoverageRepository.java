@@ -19,21 +19,17 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.auth.BasicScheme;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URLEncoder;
 import java.text.MessageFormat;
 import java.util.List;
 
 import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
-import static org.apache.commons.httpclient.HttpStatus.SC_BAD_REQUEST;
 
 @SuppressWarnings("WeakerAccess")
 public class SonarMasterCoverageRepository implements MasterCoverageRepository {
@@ -44,18 +40,24 @@ public class SonarMasterCoverageRepository implements MasterCoverageRepository {
 
     private final String sonarUrl;
     private final String login;
-    private final HttpClient httpClient;
+    private final String password;
+    private final HttpTransport transport;
     private final ObjectMapper objectMapper = new ObjectMapper().disable(FAIL_ON_UNKNOWN_PROPERTIES);
+    private final SonarCache cache;
     private PrintStream buildLog;
 
     public SonarMasterCoverageRepository(String sonarUrl, String login, String password, PrintStream buildLog) {
+        this(sonarUrl, login, password, buildLog, SonarCache.SHARED, HttpTransport.SHARED);
+    }
+
+    SonarMasterCoverageRepository(String sonarUrl, String login, String password, PrintStream buildLog,
+                                  SonarCache cache, HttpTransport transport) {
         this.sonarUrl = sonarUrl;
         this.login = login;
+        this.password = password;
         this.buildLog = buildLog;
-        httpClient = new HttpClient();
-        if (login != null) {
-            httpClient.getState().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(login, password));
-        }
+        this.cache = cache;
+        this.transport = transport;
     }
 
     @Override
@@ -63,8 +65,22 @@ public class SonarMasterCoverageRepository implements MasterCoverageRepository {
         final String repoName = GitUtils.getRepoName(gitHubRepoUrl);
         log("Getting coverage for Git Repo URL: %s by repo name: %s", gitHubRepoUrl, repoName);
         try {
-            final SonarProject sonarProject = getSonarProject(repoName);
-            return getCoverageMeasure(sonarProject);
+            final String projectKey = cache.getProjects().get(SonarCache.key(sonarUrl, login, repoName),
+                    new SingleFlightCache.Loader<String>() {
+                        @Override
+                        public String load() throws Exception {
+                            return getSonarProject(repoName).getKey();
+                        }
+                    });
+            final float coverage = cache.getCoverage().get(SonarCache.key(sonarUrl, login, projectKey),
+                    new SingleFlightCache.Loader<Float>() {
+                        @Override
+                        public Float load() throws Exception {
+                            return getCoverageMeasure(projectKey);
+                        }
+                    });
+            log("%s", cache);
+            return coverage;
         } catch (Exception e) {
             log("Failed to get master coverage for %s", gitHubRepoUrl);
             log("Exception message '%s'", e);
@@ -82,8 +98,7 @@ public class SonarMasterCoverageRepository implements MasterCoverageRepository {
     private SonarProject getSonarProject(final String repoName) throws SonarProjectRetrievalException {
         try {
             final String searchUri = sonarUrl + SONAR_SEARCH_PROJECTS_API_PATH + "?search=" + repoName;
-            final GetMethod method = executeGetRequest(searchUri);
-            final List<SonarProject> sonarProjects = objectMapper.readValue(method.getResponseBodyAsStream(), new TypeReference<List<SonarProject>>() {
+            final List<SonarProject> sonarProjects = readJson(searchUri, new TypeReference<List<SonarProject>>() {
             });
 
             if (sonarProjects.isEmpty()) {
@@ -106,27 +121,25 @@ public class SonarMasterCoverageRepository implements MasterCoverageRepository {
      * @return the coverage found for the project
      * @throws SonarCoverageMeasureRetrievalException if an error occurred during retrieval of the coverage
      */
-    private float getCoverageMeasure(SonarProject project) throws SonarCoverageMeasureRetrievalException {
-        final String uri = MessageFormat.format("{0}{1}?componentKey={2}&metricKeys={3}", sonarUrl, SONAR_COMPONENT_MEASURE_API_PATH, URLEncoder.encode(project.getKey()), SONAR_OVERALL_LINE_COVERAGE_METRIC_NAME);
+    private float getCoverageMeasure(String projectKey) throws SonarCoverageMeasureRetrievalException {
+        final String uri = MessageFormat.format("{0}{1}?componentKey={2}&metricKeys={3}", sonarUrl, SONAR_COMPONENT_MEASURE_API_PATH, URLEncoder.encode(projectKey), SONAR_OVERALL_LINE_COVERAGE_METRIC_NAME);
         try {
-            final GetMethod method = executeGetRequest(uri);
-            String value = JsonUtils.findInJson(method.getResponseBodyAsString(), "component.measures[0].value");
-            return Float.parseFloat(value) / 100;
+            final JsonNode measure = readJson(uri, new TypeReference<JsonNode>() {
+            }).path("component").path("measures").path(0).path("value");
+            if (!measure.isValueNode()) throw new IOException("No coverage measure in response");
+            return Float.parseFloat(measure.asText()) / 100;
         } catch (Exception e) {
-            throw new SonarCoverageMeasureRetrievalException(String.format("failed to get coverage measure for sonar project %s - %s", project.getKey(), e.getMessage()), e);
+            throw new SonarCoverageMeasureRetrievalException(String.format("failed to get coverage measure for sonar project %s - %s", projectKey, e.getMessage()), e);
         }
     }
 
-    private GetMethod executeGetRequest(String uri) throws IOException, HttpClientException {
-        final GetMethod method = new GetMethod(uri);
-        if (login != null) {
-            method.getHostAuthState().setAuthScheme(new BasicScheme());
-        }
-        int status = httpClient.executeMethod(method);
-        if (status >= SC_BAD_REQUEST) {
-            throw new HttpClientException(uri, status, method.getResponseBodyAsString());
-        }
-        return method;
+    private <T> T readJson(final String uri, final TypeReference<T> type) throws IOException {
+        return transport.get(uri, login, password, new HttpTransport.Parser<T>() {
+            @Override
+            public T parse(InputStream in) throws IOException {
+                return objectMapper.readValue(in, type);
+            }
+        });
     }
 
     private void log(String format, Object... arguments) {
@@ -134,12 +147,6 @@ public class SonarMasterCoverageRepository implements MasterCoverageRepository {
         buildLog.println();
     }
 
-    private static class HttpClientException extends Exception {
-        HttpClientException(String uri, int status, String reason) {
-            super("request to " + uri + " failed with " + status + " reason " + reason);
-        }
-    }
-
     private static class SonarProject {
         @JsonProperty("k")
         String key;
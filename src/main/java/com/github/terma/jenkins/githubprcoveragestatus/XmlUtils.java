@@ -17,44 +17,64 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
-import org.w3c.dom.Document;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
 
 public class XmlUtils {
 
-    public static String findInXml(String xml, String xpath) {
+    private static final XMLInputFactory STREAM_FACTORY = createStreamFactory();
+
+    private static XMLInputFactory createStreamFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newFactory();
+        // reports often reference DTD (report.dtd, coverage-04.dtd) which we never need
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Pull parser over stream, nothing is materialized except current event.
+     * Caller is responsible to close reader and stream.
+     */
+    public static XMLStreamReader createStreamReader(InputStream in) throws XMLStreamException {
+        return STREAM_FACTORY.createXMLStreamReader(in);
+    }
+
+    /**
+     * Move reader to root element of document.
+     *
+     * @return local name of root element
+     */
+    public static String toRootElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) return reader.getLocalName();
+        }
+        throw new XMLStreamException("No root element");
+    }
+
+    /**
+     * Skip subtree of current start element without building it.
+     * After call reader points to matching end element.
+     */
+    public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    public static void closeQuietly(XMLStreamReader reader) {
+        if (reader == null) return;
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            builder.setEntityResolver(new EntityResolver() {
-                @Override
-                public InputSource resolveEntity(String publicId, String systemId)
-                        throws SAXException, IOException {
-//                    if (systemId.contains("foo.dtd")) {
-                    return new InputSource(new StringReader(""));
-//                    } else {
-//                        return null;
-//                    }
-                }
-            });
-            Document doc = builder.parse(new InputSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
-            XPathFactory xPathfactory = XPathFactory.newInstance();
-            XPathExpression expr = xPathfactory.newXPath().compile(xpath);
-            return (String) expr.evaluate(doc, XPathConstants.STRING);
-        } catch (Throwable t) {
-            throw new RuntimeException(t);
+            reader.close();
+        } catch (XMLStreamException ignore) {
+            // nothing to do
         }
     }
 
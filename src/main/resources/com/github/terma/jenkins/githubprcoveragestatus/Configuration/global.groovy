@@ -52,4 +52,12 @@ f.section(title: descriptor.displayName) {
         f.checkbox()
     }
 
+    f.entry(field: "parseParallelism", title: _("Threads to parse coverage reports")) {
+        f.textbox()
+    }
+
+    f.entry(field: "baselineRetention", title: _("Master baselines to keep per repository")) {
+        f.textbox()
+    }
+
 }
@@ -0,0 +1,123 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class BaselineStoreTest {
+
+    private static final String REPO = "git@github.com:some/my-project.git";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void loadSavedBaselineByRepoAndSha() throws IOException {
+        final BaselineStore store = new BaselineStore(temporaryFolder.getRoot(), 0);
+        store.save(REPO, "a1b2c3d4", new byte[]{1, 2, 3});
+        store.save("other", "a1b2c3d4", new byte[]{4});
+
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, store.load(REPO, "a1b2c3d4"));
+        Assert.assertArrayEquals(new byte[]{4}, store.load("other", "A1B2C3D4"));
+        Assert.assertNull(store.load(REPO, "ffffffff"));
+        Assert.assertNull(store.load("unknown", "a1b2c3d4"));
+    }
+
+    @Test
+    public void latestIsLastSaved() throws IOException {
+        final BaselineStore store = new BaselineStore(temporaryFolder.getRoot(), 0);
+        Assert.assertNull(store.getLatestSha(REPO));
+
+        store.save(REPO, "bbbbbbbb", new byte[]{1});
+        store.save(REPO, "aaaaaaaa", new byte[]{2});
+
+        Assert.assertEquals("aaaaaaaa", store.getLatestSha(REPO));
+
+        store.save(REPO, "bbbbbbbb", new byte[]{3});
+
+        Assert.assertEquals("bbbbbbbb", store.getLatestSha(REPO));
+        Assert.assertArrayEquals(new byte[]{3}, store.load(REPO, "bbbbbbbb"));
+    }
+
+    @Test
+    public void evictOldestBeyondRetention() throws IOException {
+        final BaselineStore store = new BaselineStore(temporaryFolder.getRoot(), 2);
+        store.save(REPO, "11111111", new byte[]{1});
+        store.save(REPO, "22222222", new byte[]{2});
+        store.save(REPO, "33333333", new byte[]{3});
+
+        Assert.assertNull(store.load(REPO, "11111111"));
+        Assert.assertNotNull(store.load(REPO, "22222222"));
+        Assert.assertNotNull(store.load(REPO, "33333333"));
+    }
+
+    @Test
+    public void orderBySequenceNotByFileTime() throws IOException {
+        final BaselineStore store = new BaselineStore(temporaryFolder.getRoot(), 2);
+        store.save(REPO, "11111111", new byte[]{1});
+        store.save(REPO, "22222222", new byte[]{2});
+        for (File file : temporaryFolder.getRoot().listFiles()) {
+            final File[] baselines = file.listFiles();
+            if (baselines == null) continue;
+            for (File baseline : baselines) Assert.assertTrue(baseline.setLastModified(baseline.getName().contains("1111") ? 5000000 : 1000));
+        }
+
+        store.save(REPO, "33333333", new byte[]{3});
+
+        Assert.assertEquals("33333333", store.getLatestSha(REPO));
+        Assert.assertNull(store.load(REPO, "11111111"));
+        Assert.assertNotNull(store.load(REPO, "22222222"));
+    }
+
+    @Test
+    public void continueSequenceIfItIsLost() throws IOException {
+        final BaselineStore store = new BaselineStore(temporaryFolder.getRoot(), 0);
+        store.save(REPO, "11111111", new byte[]{1});
+        store.save(REPO, "22222222", new byte[]{2});
+        Assert.assertTrue(new File(temporaryFolder.getRoot(), "sequence").delete());
+
+        store.save(REPO, "33333333", new byte[]{3});
+
+        Assert.assertEquals("33333333", store.getLatestSha(REPO));
+    }
+
+    @Test
+    public void evictRepositoriesWithOldestBaselineBeyondMax() throws IOException {
+        final BaselineStore store = new BaselineStore(temporaryFolder.getRoot(), 0, 2);
+        store.save("a", "11111111", new byte[]{1});
+        store.save("b", "22222222", new byte[]{2});
+        store.save("a", "33333333", new byte[]{3});
+        store.save("c", "44444444", new byte[]{4});
+
+        Assert.assertNull(store.getLatestSha("b"));
+        Assert.assertEquals("33333333", store.getLatestSha("a"));
+        Assert.assertEquals("44444444", store.getLatestSha("c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectStrangeSha() throws IOException {
+        new BaselineStore(temporaryFolder.getRoot(), 0).save(REPO, "../../config", new byte[]{1});
+    }
+
+}
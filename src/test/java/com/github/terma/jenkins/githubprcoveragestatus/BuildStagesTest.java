@@ -0,0 +1,160 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BuildStagesTest {
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final BuildStages stages = new BuildStages(new PrintStream(log, true), BuildStages.REMOTE_EXECUTOR);
+
+    private static Callable<String> sleep(final String result, final long millis) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                Thread.sleep(millis);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void runRemoteStagesWhileLocalStageIsRunning() throws Exception {
+        final long start = System.currentTimeMillis();
+
+        final Future<String> master = stages.start("master coverage", sleep("master", 300));
+        final Future<String> gitHub = stages.start("GitHub repository", sleep("repo", 300));
+        final String local = stages.run("build coverage", sleep("local", 300));
+
+        Assert.assertEquals("local", local);
+        Assert.assertEquals("master", stages.await(master));
+        Assert.assertEquals("repo", stages.await(gitHub));
+        Assert.assertTrue(System.currentTimeMillis() - start < 850);
+    }
+
+    @Test
+    public void logTimeOfEachStage() throws Exception {
+        stages.await(stages.start("master coverage", sleep("master", 0)));
+        stages.run("build coverage", sleep("local", 0));
+
+        Assert.assertTrue(log.toString().contains("[GitHub PR Status] master coverage took "));
+        Assert.assertTrue(log.toString().contains("[GitHub PR Status] build coverage took "));
+        Assert.assertTrue(stages.toString().startsWith("stages: master coverage "));
+        Assert.assertTrue(stages.toString().contains(", build coverage "));
+        Assert.assertTrue(stages.toString().contains(", total "));
+    }
+
+    @Test
+    public void keepTimingsOfStagesInOrderOfFinish() throws Exception {
+        stages.run("build coverage", sleep("local", 50));
+        stages.await(stages.start("master coverage", sleep("master", 0)));
+
+        final Map<String, Long> timings = stages.getTimings();
+        Assert.assertEquals(Arrays.asList("build coverage", "master coverage"), new ArrayList<>(timings.keySet()));
+        Assert.assertTrue(timings.get("build coverage") >= 50);
+        Assert.assertTrue(stages.getTotalMillis() >= timings.get("build coverage"));
+    }
+
+    @Test
+    public void throwExceptionOfRemoteStageAsIs() throws Exception {
+        final Future<String> failed = stages.start("GitHub repository", new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                throw new IOException("Exceeded GitHub rate limit");
+            }
+        });
+
+        try {
+            stages.await(failed);
+            Assert.fail("Where is my exception?");
+        } catch (IOException e) {
+            Assert.assertEquals("Exceeded GitHub rate limit", e.getMessage());
+        }
+    }
+
+    @Test
+    public void throwRuntimeExceptionOfLocalStageAsIs() throws Exception {
+        try {
+            stages.run("build coverage", new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalArgumentException("Strange report");
+                }
+            });
+            Assert.fail("Where is my exception?");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Strange report", e.getMessage());
+        }
+    }
+
+    @Test
+    public void interruptRunningRemoteStageOnCancel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final Future<String> master = stages.start("master coverage", new Callable<String>() {
+            @Override
+            public String call() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                    return "master";
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    return null;
+                }
+            }
+        });
+        started.await();
+
+        stages.cancel();
+
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        try {
+            stages.await(master);
+            Assert.fail("Where is my exception?");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void dontTouchFinishedStagesOnCancel() throws Exception {
+        final Future<String> master = stages.start("master coverage", sleep("master", 0));
+        Assert.assertEquals("master", stages.await(master));
+
+        stages.cancel();
+
+        Assert.assertFalse(master.isCancelled());
+        Assert.assertEquals("master", stages.await(master));
+    }
+
+}
@@ -20,6 +20,11 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
 public class CloverParserTest {
 
     @Test
@@ -27,7 +32,7 @@ public class CloverParserTest {
         String filePath = CloverParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CloverParserTest/clover.xml").getFile();
 
-        Assert.assertEquals(0.5, new CloverParser().get(filePath), 0.1);
+        Assert.assertEquals(0.5, new CloverParser().get(filePath).getCoverage(), 0.1);
     }
 
     @Test
@@ -35,7 +40,7 @@ public class CloverParserTest {
         String filePath = CloverParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CloverParserTest/clover-zero-statements-coverage.xml").getFile();
 
-        Assert.assertEquals(0, new CloverParser().get(filePath), 0.1);
+        Assert.assertEquals(0, new CloverParser().get(filePath).getCoverage(), 0.1);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -43,7 +48,7 @@ public class CloverParserTest {
         String filePath = CloverParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CloverParserTest/clover-invalid-no-statements.xml").getFile();
 
-        Assert.assertEquals(0, new CloverParser().get(filePath), 0.1);
+        Assert.assertEquals(0, new CloverParser().get(filePath).getCoverage(), 0.1);
     }
 
     @Test
@@ -51,7 +56,46 @@ public class CloverParserTest {
         String filePath = CloverParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CloverParserTest/clover-zero-statements.xml").getFile();
 
-        Assert.assertEquals(0, new CloverParser().get(filePath), 0.1);
+        Assert.assertEquals(0, new CloverParser().get(filePath).getCoverage(), 0.1);
+    }
+
+    @Test
+    public void skipMetricsOfPackagesAndFilesBeforeProjectMetrics() {
+        final String report = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><coverage><project>"
+                + "<package name=\"p\"><metrics statements=\"1\" coveredstatements=\"1\"/>"
+                + "<file name=\"a.php\"><metrics statements=\"1\" coveredstatements=\"1\"/></file></package>"
+                + "<metrics statements=\"8\" coveredstatements=\"2\"/></project></coverage>";
+
+        final CoverageCounts counts = new CloverParser().get("synthetic", toStream(report));
+
+        Assert.assertEquals(0.25, counts.getCoverage(), 0.0001);
+        Assert.assertEquals(2, counts.getCovered(CoverageCounts.Type.STATEMENT));
+        Assert.assertEquals(6, counts.getMissed(CoverageCounts.Type.STATEMENT));
+    }
+
+    @Test
+    public void stopReadingAfterProjectMetrics() {
+        final InputStream report = new SequenceInputStream(
+                toStream("<coverage><project><metrics statements=\"4\" coveredstatements=\"3\"/>"),
+                new InputStream() {
+                    private long left = 1024L * 1024 * 1024;
+
+                    @Override
+                    public int read() {
+                        return left-- > 0 ? ' ' : -1;
+                    }
+                });
+
+        Assert.assertEquals(0.75, new CloverParser().get("synthetic", report).getCoverage(), 0.0001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwExceptionIfNotCloverReport() {
+        new CloverParser().get("synthetic", toStream("<report><metrics statements=\"4\" coveredstatements=\"3\"/></report>"));
+    }
+
+    private static InputStream toStream(final String report) {
+        return new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8));
     }
 
 }
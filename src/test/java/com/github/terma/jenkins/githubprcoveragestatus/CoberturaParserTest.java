@@ -20,6 +20,11 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
 public class CoberturaParserTest {
 
     @Test
@@ -27,7 +32,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura.xml").getFile();
 
-        Assert.assertEquals(0.94, new CoberturaParser().get(filePath), 0.1);
+        Assert.assertEquals(0.8888888 / 2 + 0.5, new CoberturaParser().get(filePath).getCoverage(), 0.0001);
     }
 
     @Test
@@ -35,7 +40,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-with-single-quotes.xml").getFile();
 
-        Assert.assertEquals(0.94, new CoberturaParser().get(filePath), 0.1);
+        Assert.assertEquals(0.8888888 / 2 + 0.5, new CoberturaParser().get(filePath).getCoverage(), 0.0001);
     }
 
     @Test
@@ -43,7 +48,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-zero-coverage.xml").getFile();
 
-        Assert.assertEquals(0, new CoberturaParser().get(filePath), 0.1);
+        Assert.assertEquals(0, new CoberturaParser().get(filePath).getCoverage(), 0);
     }
 
     @Test
@@ -51,7 +56,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-zero-branch-rate.xml").getFile();
 
-        Assert.assertEquals(0.5, new CoberturaParser().get(filePath), 0.1);
+        Assert.assertEquals(0.5, new CoberturaParser().get(filePath).getCoverage(), 0.1);
     }
 
     @Test
@@ -59,7 +64,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-zero-line-rate.xml").getFile();
 
-        Assert.assertEquals(1, new CoberturaParser().get(filePath), 0.1);
+        Assert.assertEquals(1, new CoberturaParser().get(filePath).getCoverage(), 0.1);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -76,4 +81,55 @@ public class CoberturaParserTest {
         new CoberturaParser().get(filePath);
     }
 
+    @Test
+    public void extractLineAndBranchCountsFromRootElement() {
+        String filePath = CoberturaParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura.xml").getFile();
+
+        final CoverageCounts counts = new CoberturaParser().get(filePath);
+
+        Assert.assertTrue(counts.isWeighted());
+        Assert.assertEquals(0.8888888 / 2 + 0.5, counts.getCoverage(), 0.0001);
+        Assert.assertEquals(32 + 6, counts.getCovered());
+        Assert.assertEquals(4, counts.getMissed());
+        Assert.assertEquals(32, counts.getCovered(CoverageCounts.Type.LINE));
+        Assert.assertEquals(4, counts.getMissed(CoverageCounts.Type.LINE));
+        Assert.assertEquals(6, counts.getCovered(CoverageCounts.Type.BRANCH));
+        Assert.assertEquals(0, counts.getMissed(CoverageCounts.Type.BRANCH));
+    }
+
+    @Test
+    public void useRatesIfReportHasNoCounts() {
+        String filePath = CoberturaParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-zero-branch-rate.xml").getFile();
+
+        Assert.assertFalse(new CoberturaParser().get(filePath).isWeighted());
+    }
+
+    @Test
+    public void readOnlyRootElementAndStop() {
+        final InputStream report = new SequenceInputStream(
+                new ByteArrayInputStream(("<?xml version=\"1.0\"?>\n" +
+                        "<!DOCTYPE coverage SYSTEM \"http://cobertura.sourceforge.net/xml/coverage-04.dtd\">\n" +
+                        "<coverage branch-rate=\"0.5\" line-rate=\"0.25\">")
+                        .getBytes(StandardCharsets.UTF_8)),
+                new InputStream() {
+                    private long left = 1024L * 1024 * 1024;
+
+                    @Override
+                    public int read() {
+                        return left-- > 0 ? '<' : -1;
+                    }
+                });
+
+        Assert.assertEquals(0.375, new CoberturaParser().get("synthetic", report).getCoverage(), 0.0001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwExceptionIfNotCoberturaReport() {
+        String filePath = CoberturaParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
+        new CoberturaParser().get(filePath);
+    }
+
 }
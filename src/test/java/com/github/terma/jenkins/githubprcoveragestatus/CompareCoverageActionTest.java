@@ -18,17 +18,18 @@ limitations under the License.
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import hudson.EnvVars;
+import hudson.model.Action;
 import hudson.model.Build;
 import hudson.model.Result;
 import hudson.model.TaskListener;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.kohsuke.github.*;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 
 import static org.mockito.Mockito.*;
 
@@ -45,13 +46,6 @@ public class CompareCoverageActionTest {
     private SettingsRepository settingsRepository = mock(SettingsRepository.class);
     private PullRequestRepository pullRequestRepository = mock(PullRequestRepository.class);
     private GHRepository ghRepository = mock(GHRepository.class);
-    private GHPullRequestCommitDetail commit = mock(GHPullRequestCommitDetail.class);
-
-    private List<GHPullRequestCommitDetail> commits = new ArrayList<GHPullRequestCommitDetail>() {{
-        add(mock(GHPullRequestCommitDetail.class));
-        add(commit);
-    }};
-    private PagedIterable<GHPullRequestCommitDetail> pagedIterable = mock(PagedIterable.class);
 
     private CompareCoverageAction coverageAction = new CompareCoverageAction();
 
@@ -61,6 +55,7 @@ public class CompareCoverageActionTest {
         ServiceRegistry.setCoverageRepository(coverageRepository);
         ServiceRegistry.setSettingsRepository(settingsRepository);
         ServiceRegistry.setPullRequestRepository(pullRequestRepository);
+        ServiceRegistry.setPublishQueue(new GitHubPublishQueue(GitHubPublishQueue.SYNCHRONOUS, 3, 0));
         when(pullRequestRepository.getGitHubRepository(GIT_URL)).thenReturn(ghRepository);
         when(listener.getLogger()).thenReturn(System.out);
     }
@@ -87,6 +82,19 @@ public class CompareCoverageActionTest {
         verify(pullRequestRepository).comment(ghRepository, 12, "[![0% (0.0%) vs master 0%](aaa/coverage-status-icon/?coverage=0.0&masterCoverage=0.0)](aaa/job/a/coverage-details)");
     }
 
+    @Test
+    public void updateCoverageCommentOfPullRequestByMarker() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        coverageAction.setPublishResultAs("updatedComment");
+
+        coverageAction.perform(build, null, null, listener);
+
+        verify(pullRequestRepository).upsertComment(ghRepository, 12, "<!-- github-pr-coverage-status -->",
+                "<!-- github-pr-coverage-status -->\n[![0% (0.0%) vs master 0%](aaa/coverage-status-icon/?coverage=0.0&masterCoverage=0.0)](aaa/job/a/coverage-details)");
+        verify(pullRequestRepository, never()).comment(any(GHRepository.class), anyInt(), anyString());
+    }
+
     @Test
     public void postResultAsStatusCheck() throws IOException, InterruptedException {
         prepareBuildSuccess();
@@ -105,6 +113,86 @@ public class CompareCoverageActionTest {
         );
     }
 
+    @Test
+    public void postResultAsStatusCheckForPrHeadIfGhprbBuildsMergeCommit() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        prepareCommit();
+        when(envVars.get(PrIdAndUrlUtils.GIT_PR_COMMIT_ENV_PROPERTY)).thenReturn("a1b2c3");
+        coverageAction.setPublishResultAs("statusCheck");
+
+        coverageAction.perform(build, null, null, listener);
+
+        verify(pullRequestRepository).createCommitStatus(
+                ghRepository,
+                "a1b2c3",
+                GHCommitState.SUCCESS,
+                "aaa/job/a/coverage-details",
+                "Coverage 0% changed 0.0% vs master 0%"
+        );
+    }
+
+    @Test
+    public void postResultAsStatusCheckForPrHeadIfNoCommitInBuild() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        when(pullRequestRepository.getHeadSha(ghRepository, 12)).thenReturn("d4e5f6");
+        coverageAction.setPublishResultAs("statusCheck");
+
+        coverageAction.perform(build, null, null, listener);
+
+        verify(pullRequestRepository).createCommitStatus(
+                ghRepository,
+                "d4e5f6",
+                GHCommitState.SUCCESS,
+                "aaa/job/a/coverage-details",
+                "Coverage 0% changed 0.0% vs master 0%"
+        );
+        verify(ghRepository, never()).getPullRequest(anyInt());
+    }
+
+    @Test
+    public void postResultAsStatusCheckForPrHeadIfBranchSourceBuildsMergeCommit() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        prepareCommit();
+        when(envVars.get(PrIdAndUrlUtils.CHANGE_ID_PROPERTY)).thenReturn("12");
+        when(pullRequestRepository.getHeadSha(ghRepository, 12)).thenReturn("d4e5f6");
+        coverageAction.setPublishResultAs("statusCheck");
+
+        coverageAction.perform(build, null, null, listener);
+
+        verify(pullRequestRepository).createCommitStatus(
+                ghRepository,
+                "d4e5f6",
+                GHCommitState.SUCCESS,
+                "aaa/job/a/coverage-details",
+                "Coverage 0% changed 0.0% vs master 0%"
+        );
+    }
+
+    @Test
+    public void postResultAsStatusCheckForPullHashOfScmRevision() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        prepareCommit();
+        when(envVars.get(PrIdAndUrlUtils.CHANGE_ID_PROPERTY)).thenReturn("12");
+        doReturn(Collections.singletonList(new SCMRevisionAction(new PullRequestSCMRevision("c7d8e9"))))
+                .when(build).getActions();
+        coverageAction.setPublishResultAs("statusCheck");
+
+        coverageAction.perform(build, null, null, listener);
+
+        verify(pullRequestRepository).createCommitStatus(
+                ghRepository,
+                "c7d8e9",
+                GHCommitState.SUCCESS,
+                "aaa/job/a/coverage-details",
+                "Coverage 0% changed 0.0% vs master 0%"
+        );
+        verify(pullRequestRepository, never()).getHeadSha(any(GHRepository.class), anyInt());
+    }
+
     @Test
     public void postResultAsSuccessfulStatusCheck() throws IOException, InterruptedException {
         prepareBuildSuccess();
@@ -192,6 +280,7 @@ public class CompareCoverageActionTest {
 
         coverageAction.perform(build, null, null, listener);
 
+        verify(pullRequestRepository, times(3)).comment(any(GHRepository.class), anyInt(), anyString());
         verify(listener).error("Couldn't add comment to pull request #12!");
         verify(printWriter, atLeastOnce()).println(any(Throwable.class));
     }
@@ -221,18 +310,31 @@ public class CompareCoverageActionTest {
         verify(pullRequestRepository).comment(ghRepository, 12, "[![0% (0.0%) vs master 0%](customJ/coverage-status-icon/?coverage=0.0&masterCoverage=0.0)](aaa/job/a/coverage-details)");
     }
     
+    @Test
+    public void addMetricsToBuildIfStepFailed() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        when(coverageRepository.get(null)).thenThrow(new IOException("broken report"));
+        initMocks();
+
+        try {
+            coverageAction.perform(build, null, null, listener);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("broken report", e.getMessage());
+        }
+
+        verify(build).addAction(any(BuildMetricsAction.class));
+    }
+
     private void prepareCoverageData(float masterCoverage, float prCoverage) throws IOException, InterruptedException {
         when(masterCoverageRepository.get(GIT_URL)).thenReturn(masterCoverage);
         when(coverageRepository.get(null)).thenReturn(prCoverage);
         initMocks();
     }
 
-    private void prepareCommit() throws IOException {
-        GHPullRequest ghPullRequest = mock(GHPullRequest.class);
-        when(ghRepository.getPullRequest(12)).thenReturn(ghPullRequest);
-        when(ghPullRequest.listCommits()).thenReturn(pagedIterable);
-        when(pagedIterable.asList()).thenReturn(commits);
-        when(commit.getSha()).thenReturn("fh3k2l");
+    private void prepareCommit() {
+        when(envVars.get(PrIdAndUrlUtils.GIT_COMMIT_PROPERTY)).thenReturn("fh3k2l");
     }
 
     private void prepareBuildSuccess() throws IOException, InterruptedException {
@@ -247,4 +349,51 @@ public class CompareCoverageActionTest {
         when(envVars.get(Utils.BUILD_URL_ENV_PROPERTY)).thenReturn(buildUrl);
         when(envVars.get(PrIdAndUrlUtils.GIT_URL_PROPERTY)).thenReturn(GIT_URL);
     }
+
+    /**
+     * Same shape as SCM API action with GitHub Branch Source revision of merge strategy PR build
+     */
+    public static class SCMRevisionAction implements Action {
+
+        private final PullRequestSCMRevision revision;
+
+        SCMRevisionAction(PullRequestSCMRevision revision) {
+            this.revision = revision;
+        }
+
+        public PullRequestSCMRevision getRevision() {
+            return revision;
+        }
+
+        @Override
+        public String getIconFileName() {
+            return null;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return null;
+        }
+
+        @Override
+        public String getUrlName() {
+            return null;
+        }
+
+    }
+
+    public static class PullRequestSCMRevision {
+
+        private final String pullHash;
+
+        PullRequestSCMRevision(String pullHash) {
+            this.pullHash = pullHash;
+        }
+
+        public String getPullHash() {
+            return pullHash;
+        }
+
+    }
+
 }
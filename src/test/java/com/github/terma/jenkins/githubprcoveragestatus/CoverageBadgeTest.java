@@ -0,0 +1,81 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoverageBadgeTest {
+
+    private final CoverageBadge badge = new CoverageBadge(CoverageBadge.loadTemplate(), 2);
+
+    @Test
+    public void renderMessageAndColorIntoTemplate() {
+        final String svg = badge.get(0.92f, 0.7f, 80, 90).getSvg();
+
+        Assert.assertTrue(svg.startsWith("<svg "));
+        Assert.assertTrue(svg.contains(">92% (+22.0%) vs master 70%</text>"));
+        Assert.assertTrue(svg.contains("fill=\"" + CoverageBadge.COLOR_GREEN + "\""));
+        Assert.assertFalse(svg.contains("{{"));
+    }
+
+    @Test
+    public void pickColorByThresholds() {
+        Assert.assertTrue(badge.render(0.5f, 0.7f, 80, 90).getSvg().contains(CoverageBadge.COLOR_RED));
+        Assert.assertTrue(badge.render(0.85f, 0.7f, 80, 90).getSvg().contains(CoverageBadge.COLOR_YELLOW));
+        Assert.assertTrue(badge.render(0.9f, 0.7f, 80, 90).getSvg().contains(CoverageBadge.COLOR_GREEN));
+    }
+
+    @Test
+    public void reuseRenderedBadge() {
+        final CoverageBadge.Rendered rendered = badge.get(0.92f, 0.7f, 80, 90);
+
+        Assert.assertSame(rendered, badge.get(0.92f, 0.7f, 80, 90));
+        Assert.assertNotSame(rendered, badge.get(0.92f, 0.7f, 50, 90));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedBadge() {
+        final CoverageBadge.Rendered first = badge.get(0.1f, 0.7f, 80, 90);
+        badge.get(0.2f, 0.7f, 80, 90);
+        badge.get(0.1f, 0.7f, 80, 90);
+        badge.get(0.3f, 0.7f, 80, 90);
+
+        Assert.assertEquals(2, badge.size());
+        Assert.assertSame(first, badge.get(0.1f, 0.7f, 80, 90));
+    }
+
+    @Test
+    public void strongEtagOfContent() {
+        final String etag = badge.render(0.92f, 0.7f, 80, 90).getEtag();
+
+        Assert.assertTrue(etag.matches("\"[0-9a-f]{32}\""));
+        Assert.assertEquals(etag, badge.render(0.92f, 0.7f, 80, 90).getEtag());
+        Assert.assertNotEquals(etag, badge.render(0.92f, 0.7f, 95, 99).getEtag());
+    }
+
+    @Test
+    public void notModifiedIfClientHasSameEtag() {
+        Assert.assertTrue(CoverageStatusIconAction.isNotModified("\"abc\"", "\"abc\""));
+        Assert.assertTrue(CoverageStatusIconAction.isNotModified("\"x\", W/\"abc\"", "\"abc\""));
+        Assert.assertTrue(CoverageStatusIconAction.isNotModified("*", "\"abc\""));
+        Assert.assertFalse(CoverageStatusIconAction.isNotModified("\"x\"", "\"abc\""));
+        Assert.assertFalse(CoverageStatusIconAction.isNotModified(null, "\"abc\""));
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class CoverageBaselineTest {
+
+    private static LineCoverage read(final String name, final FileIds ids) throws IOException {
+        final String filePath = CoverageBaselineTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoverageDiffTest/" + name).getFile();
+        try (InputStream in = new FileInputStream(filePath)) {
+            return LineCoverage.read(filePath, in, ids);
+        }
+    }
+
+    @Test
+    public void restoreSameLinesFromBaseline() throws IOException {
+        final LineCoverage coverage = read("dev.xml", new FileIds());
+
+        final FileIds ids = new FileIds();
+        final LineCoverage restored = CoverageBaseline.read(CoverageBaseline.write(coverage), ids);
+
+        Assert.assertEquals(3, ids.size());
+        for (int id = 0; id < ids.size(); id++) {
+            final int original = coverage.getIds().intern(ids.getName(id));
+            Assert.assertEquals(coverage.getRelevant(original), restored.getRelevant(id));
+            Assert.assertEquals(coverage.getCovered(original), restored.getCovered(id));
+        }
+    }
+
+    @Test
+    public void diffWithBaselineIsSameAsWithReport() throws IOException {
+        final byte[] baseline = CoverageBaseline.write(read("dev.xml", new FileIds()));
+
+        final FileIds ids = new FileIds();
+        final CoverageDiff diff = CoverageDiff.compare(CoverageBaseline.read(baseline, ids), read("test.xml", ids));
+
+        Assert.assertEquals(2, diff.getFiles().size());
+        Assert.assertArrayEquals(new int[]{10, 11, 12}, diff.getFiles().get(0).getUncoveredLines());
+    }
+
+    @Test(expected = IOException.class)
+    public void failIfNotBaseline() throws IOException {
+        CoverageBaseline.read(new byte[]{1, 2, 3}, new FileIds());
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class CoverageCountsTest {
+
+    @Test
+    public void emptyHasZeroCoverage() {
+        Assert.assertEquals(0, new CoverageCounts().getCoverage(), 0);
+        Assert.assertEquals(0, new CoverageCounts().getReports());
+    }
+
+    @Test
+    public void reportWithoutItemsHasZeroCoverage() {
+        Assert.assertEquals(0, CoverageCounts.ofReport(0, 0).getCoverage(), 0);
+    }
+
+    @Test
+    public void weighCoverageBySizeOfReports() {
+        final CoverageCounts total = new CoverageCounts()
+                .merge(CoverageCounts.ofReport(1, 9))
+                .merge(CoverageCounts.ofReport(180, 20));
+
+        // average of ratios would be 0.5
+        Assert.assertEquals(181f / 210, total.getCoverage(), 0.00001);
+        Assert.assertEquals(2, total.getReports());
+        Assert.assertTrue(total.isWeighted());
+    }
+
+    @Test
+    public void averageRatiosIfAnyReportHasOnlyRatio() {
+        final CoverageCounts total = new CoverageCounts()
+                .merge(CoverageCounts.ofReport(1, 9))
+                .merge(CoverageCounts.ofReport(180, 20))
+                .merge(CoverageCounts.ofRatio(0.6f));
+
+        Assert.assertEquals((0.1f + 0.9f + 0.6f) / 3, total.getCoverage(), 0.00001);
+        Assert.assertFalse(total.isWeighted());
+    }
+
+    @Test
+    public void keepCoverageOfReportWithOwnRatioAndWeighItByCounts() {
+        Assert.assertEquals(0.9f, CoverageCounts.ofReport(38, 4, 0.9f).getCoverage(), 0.00001);
+
+        final CoverageCounts total = new CoverageCounts()
+                .merge(CoverageCounts.ofReport(38, 4, 0.9f))
+                .merge(CoverageCounts.ofReport(1, 1));
+
+        Assert.assertTrue(total.isWeighted());
+        Assert.assertEquals((0.9f * 42 + 1) / 44, total.getCoverage(), 0.00001);
+        Assert.assertEquals(39, total.getCovered());
+    }
+
+    @Test
+    public void sumDetailsByType() {
+        final CoverageCounts total = new CoverageCounts()
+                .merge(CoverageCounts.ofReport(1, 2).with(CoverageCounts.Type.BRANCH, 3, 4))
+                .merge(CoverageCounts.ofReport(5, 6).with(CoverageCounts.Type.BRANCH, 7, 8)
+                        .with(CoverageCounts.Type.METHOD, 1, 1));
+
+        Assert.assertEquals(6, total.getCovered());
+        Assert.assertEquals(8, total.getMissed());
+        Assert.assertEquals(10, total.getCovered(CoverageCounts.Type.BRANCH));
+        Assert.assertEquals(12, total.getMissed(CoverageCounts.Type.BRANCH));
+        Assert.assertEquals(1, total.getCovered(CoverageCounts.Type.METHOD));
+        Assert.assertEquals(0, total.getCovered(CoverageCounts.Type.LINE));
+    }
+
+    @Test
+    public void writeAndReadBack() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new CoverageCounts()
+                .merge(CoverageCounts.ofReport(1, 2).with(CoverageCounts.Type.BRANCH, 3, 4))
+                .merge(CoverageCounts.ofRatio(0.6f))
+                .merge(CoverageCounts.ofReport(1, 1, 0.2f))
+                .write(new DataOutputStream(bytes));
+
+        final CoverageCounts counts = CoverageCounts.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assert.assertEquals(2, counts.getCovered());
+        Assert.assertEquals(3, counts.getMissed());
+        Assert.assertEquals(3, counts.getReports());
+        Assert.assertFalse(counts.isWeighted());
+        Assert.assertEquals((1f / 3 + 0.6f + 0.2f) / 3, counts.getCoverage(), 0.00001);
+        Assert.assertEquals(3, counts.getCovered(CoverageCounts.Type.BRANCH));
+        Assert.assertEquals(4, counts.getMissed(CoverageCounts.Type.BRANCH));
+    }
+
+    @Test
+    public void findTypeIgnoringCase() {
+        Assert.assertEquals(CoverageCounts.Type.LINE, CoverageCounts.Type.find("line"));
+        Assert.assertNull(CoverageCounts.Type.find("random"));
+        Assert.assertNull(CoverageCounts.Type.find(null));
+    }
+
+}
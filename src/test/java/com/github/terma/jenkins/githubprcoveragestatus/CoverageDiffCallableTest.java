@@ -0,0 +1,111 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+public class CoverageDiffCallableTest {
+
+    private static final String RESOURCES = "/com/github/terma/jenkins/githubprcoveragestatus/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File copy(String resource, String target) throws IOException {
+        final File file = new File(temporaryFolder.getRoot(), target);
+        FileUtils.copyFile(new File(CoverageDiffCallableTest.class.getResource(RESOURCES + resource).getFile()), file);
+        return file;
+    }
+
+    @Test
+    public void compareReportsRelativeToWorkspace() throws IOException {
+        copy("CoverageDiffTest/dev.xml", "dev/coverage.xml");
+        copy("CoverageDiffTest/test.xml", "test/coverage.xml");
+
+        final CoverageDiff diff = new CoverageDiffCallable("dev/coverage.xml", "test/coverage.xml")
+                .invoke(temporaryFolder.getRoot(), null);
+
+        Assert.assertEquals(2, diff.getFiles().size());
+        Assert.assertEquals("app/Lost.java", diff.getFiles().get(0).getFile());
+        Assert.assertEquals("app/New.java", diff.getFiles().get(1).getFile());
+    }
+
+    @Test
+    public void compareReportsByAbsolutePath() throws IOException {
+        final File dev = copy("CoverageDiffTest/dev.xml", "dev.xml");
+        final File test = copy("CoverageDiffTest/test.xml", "test.xml");
+
+        final CoverageDiff diff = new CoverageDiffCallable(dev.getAbsolutePath(), test.getAbsolutePath())
+                .invoke(new File("not-used"), null);
+
+        Assert.assertEquals(2, diff.getFiles().size());
+    }
+
+    @Test
+    public void resultCouldBeSentBackFromAgent() throws IOException, ClassNotFoundException {
+        copy("CoverageDiffTest/dev.xml", "dev.xml");
+        copy("CoverageDiffTest/test.xml", "test.xml");
+        final CoverageDiff diff = new CoverageDiffCallable("dev.xml", "test.xml")
+                .invoke(temporaryFolder.getRoot(), null);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(diff);
+        }
+        final CoverageDiff copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (CoverageDiff) in.readObject();
+        }
+
+        Assert.assertEquals("app/Lost.java", copy.getFiles().get(0).getFile());
+        Assert.assertArrayEquals(new int[]{10, 11, 12}, copy.getFiles().get(0).getUncoveredLines());
+    }
+
+    @Test
+    public void compareReportWithMasterBaseline() throws IOException {
+        copy("CoverageDiffTest/dev.xml", "dev.xml");
+        copy("CoverageDiffTest/test.xml", "test.xml");
+        final byte[] baseline = new GetBaselineCallable("dev.xml").invoke(temporaryFolder.getRoot(), null);
+
+        final CoverageDiff diff = new CoverageDiffCallable(baseline, "test.xml")
+                .invoke(temporaryFolder.getRoot(), null);
+
+        Assert.assertEquals(2, diff.getFiles().size());
+        Assert.assertEquals("app/Lost.java", diff.getFiles().get(0).getFile());
+        Assert.assertArrayEquals(new int[]{10, 11, 12}, diff.getFiles().get(0).getUncoveredLines());
+    }
+
+    @Test(expected = IOException.class)
+    public void failIfReportIsMissing() throws IOException {
+        copy("CoverageDiffTest/dev.xml", "dev.xml");
+
+        new CoverageDiffCallable("dev.xml", "test.xml").invoke(temporaryFolder.getRoot(), null);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+public class CoverageDiffTest {
+
+    private static LineCoverage read(final String name, final FileIds ids) throws IOException {
+        final String filePath = CoverageDiffTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoverageDiffTest/" + name).getFile();
+        try (InputStream in = new FileInputStream(filePath)) {
+            return LineCoverage.read(filePath, in, ids);
+        }
+    }
+
+    @Test
+    public void findFilesWithLowerLineRateAndNewlyUncoveredLines() throws IOException {
+        final FileIds ids = new FileIds();
+        final LineCoverage dev = read("dev.xml", ids);
+        final LineCoverage test = read("test.xml", ids);
+
+        final List<CoverageDiff.FileDiff> files = CoverageDiff.compare(dev, test).getFiles();
+
+        Assert.assertEquals(2, files.size());
+
+        final CoverageDiff.FileDiff lost = files.get(0);
+        Assert.assertEquals("app/Lost.java", lost.getFile());
+        Assert.assertFalse(lost.isNewFile());
+        Assert.assertEquals(1f, lost.getDevRate(), 0.0001);
+        Assert.assertEquals(2f / 6, lost.getTestRate(), 0.0001);
+        Assert.assertEquals("66.6667%", lost.getChange());
+        Assert.assertArrayEquals(new int[]{10, 11, 12}, lost.getUncoveredLines());
+        Assert.assertEquals("10-12", lost.getUncoveredLinesAsString());
+
+        final CoverageDiff.FileDiff created = files.get(1);
+        Assert.assertEquals("app/New.java", created.getFile());
+        Assert.assertTrue(created.isNewFile());
+        Assert.assertEquals("0.0 %", created.getChange());
+        Assert.assertArrayEquals(new int[]{7, 8}, created.getUncoveredLines());
+    }
+
+    @Test
+    public void noDiffForSameReport() throws IOException {
+        final FileIds ids = new FileIds();
+
+        Assert.assertTrue(CoverageDiff.compare(read("dev.xml", ids), read("dev.xml", ids)).isEmpty());
+    }
+
+    @Test
+    public void mergeLinesOfAllClassesOfFile() throws IOException {
+        final FileIds ids = new FileIds();
+        final LineCoverage dev = read("dev.xml", ids);
+
+        final int lost = ids.intern("app/Lost.java");
+        Assert.assertEquals(5, dev.getRelevant(lost).cardinality());
+        Assert.assertEquals(5, dev.getCovered(lost).cardinality());
+        Assert.assertEquals(3, ids.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failIfReportsUseDifferentFileIds() throws IOException {
+        CoverageDiff.compare(read("dev.xml", new FileIds()), read("test.xml", new FileIds()));
+    }
+
+    @Test
+    public void renderUncoveredLinesAsRanges() {
+        Assert.assertEquals("", new CoverageDiff.FileDiff("a", false, 1, 0, new int[0])
+                .getUncoveredLinesAsString());
+        Assert.assertEquals("3-5, 9, 12-13", new CoverageDiff.FileDiff("a", false, 1, 0, new int[]{3, 4, 5, 9, 12, 13})
+                .getUncoveredLinesAsString());
+    }
+
+}
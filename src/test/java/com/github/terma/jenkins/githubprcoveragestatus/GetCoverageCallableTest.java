@@ -0,0 +1,277 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+public class GetCoverageCallableTest {
+
+    private static final String RESOURCES = "/com/github/terma/jenkins/githubprcoveragestatus/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void deleteParseCache() throws IOException {
+        FileUtils.deleteDirectory(ParseCache.getTempDir(temporaryFolder.getRoot()));
+    }
+
+    private void copy(String resource, String target) throws IOException {
+        FileUtils.copyFile(
+                new File(GetCoverageCallableTest.class.getResource(RESOURCES + resource).getFile()),
+                new File(temporaryFolder.getRoot(), target));
+    }
+
+    @Test
+    public void returnZeroIfNoReports() throws IOException, InterruptedException {
+        Assert.assertEquals(0, new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null).getCoverage(), 0.0001);
+    }
+
+    @Test
+    public void findAllReportsByOneWalkAndAverageThemIfSomeProvideOnlyRatio() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "a/target/site/jacoco.xml");
+        copy("CoberturaParserTest/cobertura-zero-branch-rate.xml", "b/cobertura.xml");
+        copy("CloverParserTest/clover.xml", "c/build/clover.xml");
+        copy("SimpleCovParserTest/coverage.json", "d/coverage/coverage.json");
+
+        final float expected = (48f / 217 + 0.5f + 0.5f + 0.857142857142857f) / 4;
+        Assert.assertEquals(expected, new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null).getCoverage(), 0.0001);
+    }
+
+    @Test
+    public void weighCoverageByReportCounts() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "big/jacoco.xml");
+        copy("JacocoParserTest/jacoco-no-code.xml", "empty/jacoco.xml");
+        copy("CloverParserTest/clover.xml", "php/clover.xml");
+
+        final GetCoverageCallable.Result result = new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null);
+
+        Assert.assertEquals((48f + 5) / (217 + 10), result.getCoverage(), 0.0001);
+        Assert.assertEquals(3, result.getReports());
+        Assert.assertEquals(53, result.getCounts().getCovered());
+        Assert.assertEquals(174, result.getCounts().getMissed());
+    }
+
+    @Test
+    public void weighSimpleCovReportByLineCounts() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "java/jacoco.xml");
+        copy("SimpleCovParserTest/coverage.json", "ruby/coverage/coverage.json");
+
+        final GetCoverageCallable.Result result = new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null);
+
+        Assert.assertTrue(result.getCounts().isWeighted());
+        Assert.assertEquals((48f + 6) / (217 + 7), result.getCoverage(), 0.0001);
+    }
+
+    @Test
+    public void collectFilesAndBytesOfReportsPerFormat() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "a/jacoco.xml");
+        copy("JacocoParserTest/jacoco-no-code.xml", "b/jacocoTestReport.xml");
+        copy("CloverParserTest/clover.xml", "c/clover.xml");
+
+        final GetCoverageCallable.Result result = new GetCoverageCallable(false, "LINE", 2)
+                .invoke(temporaryFolder.getRoot(), null);
+
+        final List<ReportStats.Format> formats = result.getStats().getFormats();
+        Assert.assertEquals(2, formats.size());
+        Assert.assertEquals("clover", formats.get(0).getName());
+        Assert.assertEquals(1, formats.get(0).getFiles());
+        Assert.assertEquals(new File(temporaryFolder.getRoot(), "c/clover.xml").length(), formats.get(0).getBytes());
+        Assert.assertEquals("jacoco", formats.get(1).getName());
+        Assert.assertEquals(2, formats.get(1).getFiles());
+        Assert.assertEquals(3, result.getStats().getFiles());
+    }
+
+    @Test
+    public void passStatsToBuildMetrics() throws IOException, InterruptedException {
+        copy("CoberturaParserTest/cobertura.xml", "a/cobertura.xml");
+        final BuildMetricsAction metrics = new BuildMetricsAction("step");
+
+        new GetCoverageCallable(false, "LINE", 0, null, null, null, metrics)
+                .get(new FilePath(temporaryFolder.getRoot()));
+
+        Assert.assertEquals(1, metrics.getReports().getFiles());
+        Assert.assertEquals("cobertura", metrics.getReports().getFormats().get(0).getName());
+        Assert.assertEquals(2, metrics.getVisitedDirectories());
+    }
+
+    @Test
+    public void ignoreSimpleCovIfDisabled() throws IOException, InterruptedException {
+        copy("CoberturaParserTest/cobertura-zero-branch-rate.xml", "b/cobertura.xml");
+        copy("SimpleCovParserTest/coverage_invalid.json", "node_modules/x/coverage.json");
+
+        Assert.assertEquals(0.5, new GetCoverageCallable(true, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null).getCoverage(), 0.0001);
+    }
+
+    @Test
+    public void resultDoesNotDependOnParallelism() throws IOException, InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            copy("JacocoParserTest/jacoco.xml", "m" + i + "/jacocoTestReport.xml");
+            copy("CoberturaParserTest/cobertura.xml", "m" + i + "/cobertura-coverage.xml");
+        }
+
+        final GetCoverageCallable singleCallable = new GetCoverageCallable(false, "INSTRUCTION", 1);
+        singleCallable.setParseCache(false);
+        final float single = singleCallable.invoke(temporaryFolder.getRoot(), null).getCoverage();
+        for (int threads = 2; threads <= 8; threads++) {
+            final GetCoverageCallable callable = new GetCoverageCallable(false, "INSTRUCTION", threads);
+            callable.setParseCache(false);
+            Assert.assertEquals(single, callable.invoke(temporaryFolder.getRoot(), null).getCoverage(), 0);
+        }
+    }
+
+    @Test
+    public void pruneDefaultAndConfiguredExcludesAndReportCounters() throws IOException, InterruptedException {
+        copy("CoberturaParserTest/cobertura-zero-branch-rate.xml", "app/cobertura.xml");
+        copy("JacocoParserTest/jacoco.xml", "app/node_modules/lib/jacoco.xml");
+        copy("JacocoParserTest/jacoco.xml", "legacy/jacoco.xml");
+
+        final GetCoverageCallable.Result result = new GetCoverageCallable(
+                false, "LINE", 0, null, "legacy/**", null).invoke(temporaryFolder.getRoot(), null);
+
+        Assert.assertEquals(0.5, result.getCoverage(), 0.0001);
+        Assert.assertEquals(1, result.getReports());
+        // root and app
+        Assert.assertEquals(2, result.getVisitedDirectories());
+        // node_modules and legacy
+        Assert.assertEquals(2, result.getPrunedDirectories());
+    }
+
+    @Test
+    public void searchOnlyInConfiguredRoots() throws IOException, InterruptedException {
+        copy("CoberturaParserTest/cobertura-zero-branch-rate.xml", "a/cobertura.xml");
+        copy("CoberturaParserTest/cobertura-zero-coverage.xml", "b/cobertura.xml");
+
+        Assert.assertEquals(0.5, new GetCoverageCallable(false, "LINE", 0, "a, c", null, null)
+                .invoke(temporaryFolder.getRoot(), null).getCoverage(), 0.0001);
+    }
+
+    @Test
+    public void takeNotChangedReportsFromParseCache() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "a/jacoco.xml");
+        copy("CloverParserTest/clover.xml", "b/clover.xml");
+        copy("CoberturaParserTest/cobertura.xml", "c/cobertura.xml");
+
+        final GetCoverageCallable.Result first = new GetCoverageCallable(false, "LINE", 2)
+                .invoke(temporaryFolder.getRoot(), null);
+        Assert.assertEquals(0, first.getCacheHits());
+        Assert.assertEquals(3, first.getCacheMisses());
+
+        final GetCoverageCallable.Result second = new GetCoverageCallable(false, "LINE", 2)
+                .invoke(temporaryFolder.getRoot(), null);
+        Assert.assertEquals(3, second.getCacheHits());
+        Assert.assertEquals(0, second.getCacheMisses());
+        Assert.assertEquals(first.getCoverage(), second.getCoverage(), 0);
+        Assert.assertEquals(first.getCounts().getCovered(CoverageCounts.Type.BRANCH),
+                second.getCounts().getCovered(CoverageCounts.Type.BRANCH));
+        Assert.assertEquals(3, second.getStats().getFiles());
+    }
+
+    @Test
+    public void dontCheckCachedReportIfParserReadsOnlyStartOfIt() throws IOException, InterruptedException {
+        // java clover writes project metrics before packages, parser stops at them
+        final StringBuilder clover = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<coverage generated=\"1\"><project timestamp=\"1\">"
+                + "<metrics statements=\"10\" coveredstatements=\"5\"/>");
+        while (clover.length() < 1024 * 1024) {
+            clover.append("<package name=\"p\"><metrics statements=\"1\" coveredstatements=\"1\"/></package>\n");
+        }
+        FileUtils.writeStringToFile(new File(temporaryFolder.getRoot(), "clover.xml"),
+                clover.append("</project></coverage>").toString(), "UTF-8");
+
+        final GetCoverageCallable.Result first = new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null);
+        final GetCoverageCallable.Result second = new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null);
+
+        Assert.assertEquals(0.5, second.getCoverage(), 0.0001);
+        Assert.assertEquals(1, first.getCacheMisses());
+        // parsed again without checksum of report
+        Assert.assertEquals(0, second.getCacheHits());
+        Assert.assertEquals(0, second.getCacheMisses());
+    }
+
+    @Test
+    public void cacheCountsPerJacocoCounterType() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "a/jacoco.xml");
+
+        final float line = new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null).getCoverage();
+        final GetCoverageCallable.Result instruction = new GetCoverageCallable(false, "INSTRUCTION", 0)
+                .invoke(temporaryFolder.getRoot(), null);
+
+        Assert.assertEquals(0, instruction.getCacheHits());
+        Assert.assertNotEquals(line, instruction.getCoverage());
+    }
+
+    @Test
+    public void logParseCacheHits() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "a/jacoco.xml");
+        final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        final FilePath workspace = new FilePath(temporaryFolder.getRoot());
+
+        new GetCoverageCallable(false, "LINE", 0, null, null, new PrintStream(log, true)).get(workspace);
+        new GetCoverageCallable(false, "LINE", 0, null, null, new PrintStream(log, true)).get(workspace);
+
+        Assert.assertTrue(log.toString().contains("[GitHub PR Status] parse cache: 0 hit(s), 1 miss(es)"));
+        Assert.assertTrue(log.toString().contains("[GitHub PR Status] parse cache: 1 hit(s), 0 miss(es)"));
+    }
+
+    @Test
+    public void dontApplyDefaultExcludesToRootInsideOfExcludedDirectory() throws IOException, InterruptedException {
+        copy("CoberturaParserTest/cobertura-zero-branch-rate.xml", "vendor/acme/target/cobertura.xml");
+        copy("JacocoParserTest/jacoco.xml", "vendor/acme/target/node_modules/lib/jacoco.xml");
+        copy("JacocoParserTest/jacoco.xml", "vendor/other/jacoco.xml");
+
+        final GetCoverageCallable.Result result = new GetCoverageCallable(
+                false, "LINE", 0, "vendor/acme/target", null, null).invoke(temporaryFolder.getRoot(), null);
+        Assert.assertEquals(0.5, result.getCoverage(), 0.0001);
+        Assert.assertEquals(1, result.getReports());
+
+        Assert.assertEquals(0, new GetCoverageCallable(false, "LINE", 0)
+                .invoke(temporaryFolder.getRoot(), null).getReports());
+        Assert.assertEquals(0, new GetCoverageCallable(false, "LINE", 0, "vendor/acme/target", "**/acme/**", null)
+                .invoke(temporaryFolder.getRoot(), null).getReports());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failIfReportIsBroken() throws IOException, InterruptedException {
+        copy("JacocoParserTest/jacoco.xml", "a/jacoco.xml");
+        copy("JacocoParserTest/jacoco-no-line-tag.xml", "b/jacoco.xml");
+
+        new GetCoverageCallable(false, "LINE", 4).invoke(temporaryFolder.getRoot(), null);
+    }
+
+}
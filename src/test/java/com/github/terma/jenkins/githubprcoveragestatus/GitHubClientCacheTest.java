@@ -0,0 +1,84 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+public class GitHubClientCacheTest {
+
+    private final List<String> created = new ArrayList<>();
+
+    private final GitHubClientCache cache = new GitHubClientCache(new GitHubClientCache.Factory() {
+        @Override
+        public GitHub create(String apiUrl, String personalAccessToken) {
+            created.add(apiUrl + "/" + personalAccessToken);
+            return mock(GitHub.class);
+        }
+    });
+
+    @Test
+    public void reuseClientForSameUrlAndToken() throws IOException {
+        final GitHub first = cache.get(null, "token");
+
+        Assert.assertSame(first, cache.get(null, "token"));
+        Assert.assertSame(first, cache.get(null, "token"));
+        Assert.assertEquals(1, created.size());
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void separateClientsByUrlAndToken() throws IOException {
+        final GitHub gitHub = cache.get(null, "token");
+        final GitHub otherToken = cache.get(null, "other");
+        final GitHub anonymous = cache.get(null, null);
+        final GitHub enterprise = cache.get("https://ghe/api/v3", "token");
+
+        Assert.assertNotSame(gitHub, otherToken);
+        Assert.assertNotSame(gitHub, anonymous);
+        Assert.assertNotSame(gitHub, enterprise);
+        Assert.assertEquals(4, cache.size());
+        Assert.assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void createNewClientAfterInvalidate() throws IOException {
+        final GitHub first = cache.get("https://ghe/api/v3", "token");
+
+        cache.invalidate();
+
+        Assert.assertNotSame(first, cache.get("https://ghe/api/v3", "token"));
+        Assert.assertEquals(2, created.size());
+    }
+
+    @Test
+    public void doNotKeepTokenInStats() throws IOException {
+        cache.get(null, "secret-token");
+
+        Assert.assertFalse(cache.toString().contains("secret-token"));
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.github.HttpException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GitHubPublishQueueTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<String> published = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+
+    private final GitHubPublishQueue queue = new GitHubPublishQueue(new GitHubPublishQueue.Scheduler() {
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(task);
+            delays.add(delayMillis);
+        }
+    }, 3, 1000);
+
+    private GitHubPublishQueue.Publication publication(final String key, final String value, final int failures) {
+        return new GitHubPublishQueue.Publication(key) {
+            private int attempts;
+
+            @Override
+            void publish() throws Exception {
+                if (attempts++ < failures) throw new IOException("GitHub is down");
+                published.add(value);
+            }
+
+            @Override
+            void failed(Exception e) {
+                GitHubPublishQueueTest.this.failures.add(value + ": " + e.getMessage());
+            }
+        };
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) tasks.remove(0).run();
+    }
+
+    @Test
+    public void publishLater() {
+        queue.submit(publication("pr#1", "a", 0));
+
+        Assert.assertEquals(0, published.size());
+        Assert.assertEquals(1, queue.getDepth());
+
+        runTasks();
+
+        Assert.assertEquals("[a]", published.toString());
+        Assert.assertEquals(0, queue.getDepth());
+        Assert.assertEquals(1, queue.getPublished());
+    }
+
+    @Test
+    public void publishOnlyLatestUpdateOfKey() {
+        queue.submit(publication("pr#1", "a", 0));
+        queue.submit(publication("pr#1", "b", 0));
+        queue.submit(publication("pr#2", "c", 0));
+
+        Assert.assertEquals(2, queue.getDepth());
+        runTasks();
+
+        Assert.assertEquals("[b, c]", published.toString());
+        Assert.assertEquals(3, queue.getSubmitted());
+        Assert.assertEquals(1, queue.getCoalesced());
+    }
+
+    @Test
+    public void retryWithBackoff() {
+        queue.submit(publication("pr#1", "a", 2));
+
+        runTasks();
+
+        Assert.assertEquals("[a]", published.toString());
+        Assert.assertEquals(2, queue.getRetried());
+        Assert.assertEquals(3, delays.size());
+        Assert.assertEquals(0, (long) delays.get(0));
+        Assert.assertTrue(delays.get(1) >= 500 && delays.get(1) <= 1000);
+        Assert.assertTrue(delays.get(2) >= 1000 && delays.get(2) <= 2000);
+    }
+
+    @Test
+    public void reportFailureOnceAfterAllAttempts() {
+        queue.submit(publication("pr#1", "a", 10));
+
+        runTasks();
+
+        Assert.assertEquals(0, published.size());
+        Assert.assertEquals("[a: GitHub is down]", failures.toString());
+        Assert.assertEquals(1, queue.getFailed());
+        Assert.assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void failAtOnceIfGitHubRejectsRequest() {
+        queue.submit(new GitHubPublishQueue.Publication("pr#1") {
+            @Override
+            void publish() throws Exception {
+                throw new HttpException("{\"message\":\"Bad credentials\"}", 401, "Unauthorized", "https://api.github.com");
+            }
+
+            @Override
+            void failed(Exception e) {
+                failures.add("a");
+            }
+        });
+
+        runTasks();
+
+        Assert.assertEquals("[a]", failures.toString());
+        Assert.assertEquals(0, queue.getRetried());
+        Assert.assertEquals(1, queue.getFailed());
+    }
+
+    @Test
+    public void retryOnlyIoServerAndRateLimitErrors() {
+        Assert.assertTrue(GitHubPublishQueue.isRetryable(new IOException("Connection reset")));
+        Assert.assertTrue(GitHubPublishQueue.isRetryable(new HttpException("", 502, "Bad Gateway", "")));
+        Assert.assertTrue(GitHubPublishQueue.isRetryable(new HttpException("", 429, "Too Many Requests", "")));
+        Assert.assertTrue(GitHubPublishQueue.isRetryable(new HttpException(
+                "{\"message\":\"API rate limit exceeded for user\"}", 403, "Forbidden", "")));
+        Assert.assertFalse(GitHubPublishQueue.isRetryable(new HttpException(
+                "{\"message\":\"Resource not accessible by integration\"}", 403, "Forbidden", "")));
+        Assert.assertFalse(GitHubPublishQueue.isRetryable(new HttpException("", 422, "Unprocessable Entity", "")));
+        Assert.assertFalse(GitHubPublishQueue.isRetryable(new FileNotFoundException("https://api.github.com/x")));
+        Assert.assertFalse(GitHubPublishQueue.isRetryable(new IllegalStateException()));
+    }
+
+    @Test
+    public void putBackTillRateLimitResetWithoutCountingAttempt() {
+        final long reset = System.currentTimeMillis() + 60 * 60 * 1000;
+        queue.submit(new GitHubPublishQueue.Publication("pr#1") {
+            private int attempts;
+
+            @Override
+            void publish() throws Exception {
+                if (attempts++ < 5) throw new GitHubRateLimitGovernor.RateLimitException("Exceeded GitHub rate limit", reset);
+                published.add("a");
+            }
+
+            @Override
+            void failed(Exception e) {
+                failures.add(e.getMessage());
+            }
+        });
+
+        runTasks();
+
+        Assert.assertEquals("[a]", published.toString());
+        Assert.assertEquals(0, failures.size());
+        Assert.assertEquals(5, queue.getRateLimited());
+        Assert.assertEquals(0, queue.getRetried());
+        Assert.assertEquals(6, delays.size());
+        Assert.assertTrue(delays.get(1) > 59 * 60 * 1000 && delays.get(1) <= 60 * 60 * 1000 + 1000);
+    }
+
+    @Test
+    public void dropFailedUpdateIfNewerCame() {
+        queue.submit(new GitHubPublishQueue.Publication("pr#1") {
+            @Override
+            void publish() throws Exception {
+                queue.submit(publication("pr#1", "b", 0));
+                throw new IOException("GitHub is down");
+            }
+
+            @Override
+            void failed(Exception e) {
+                failures.add("a");
+            }
+        });
+
+        runTasks();
+
+        Assert.assertEquals("[b]", published.toString());
+        Assert.assertEquals(0, failures.size());
+        Assert.assertEquals(0, queue.getRetried());
+    }
+
+    @Test
+    public void publishSynchronouslyForTests() {
+        final GitHubPublishQueue synchronous = new GitHubPublishQueue(GitHubPublishQueue.SYNCHRONOUS, 3, 1000);
+
+        synchronous.submit(publication("pr#1", "a", 1));
+
+        Assert.assertEquals("[a]", published.toString());
+        Assert.assertEquals(0, synchronous.getDepth());
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GitHubRateLimitGovernorTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    private final List<Long> sleeps = new ArrayList<>();
+    private long now = 1000000;
+
+    private final GitHubRateLimitGovernor governor = new GitHubRateLimitGovernor(10 * MINUTE,
+            new GitHubRateLimitGovernor.Clock() {
+                @Override
+                public long now() {
+                    return now;
+                }
+
+                @Override
+                public void sleep(long millis) {
+                    sleeps.add(millis);
+                    now += millis;
+                }
+            });
+
+    @Test
+    public void passIfBudgetUnknown() throws IOException {
+        governor.acquire();
+        governor.acquire();
+
+        Assert.assertEquals(-1, governor.getRemaining());
+        Assert.assertEquals(0, sleeps.size());
+        Assert.assertEquals("GitHub rate limit: unknown", governor.toString());
+    }
+
+    @Test
+    public void takeRequestsFromObservedBudget() throws IOException {
+        governor.observe(5000, 2, now + MINUTE);
+
+        governor.acquire();
+        governor.acquire();
+
+        Assert.assertEquals(0, governor.getRemaining());
+        Assert.assertEquals(5000, governor.getLimit());
+        Assert.assertEquals(0, sleeps.size());
+    }
+
+    @Test
+    public void waitTillResetIfBudgetIsOver() throws IOException {
+        governor.observe(5000, 0, now + MINUTE);
+
+        governor.acquire();
+
+        Assert.assertEquals(1, sleeps.size());
+        Assert.assertEquals(MINUTE + 1000, (long) sleeps.get(0));
+        Assert.assertEquals(4999, governor.getRemaining());
+        Assert.assertEquals(1, governor.getWaits());
+    }
+
+    @Test
+    public void refillBudgetIfResetPassed() throws IOException {
+        governor.observe(60, 0, now - 1);
+
+        governor.acquire();
+
+        Assert.assertEquals(0, sleeps.size());
+        Assert.assertEquals(59, governor.getRemaining());
+    }
+
+    @Test
+    public void failIfResetIsLaterThanMaxWait() throws IOException {
+        governor.observe(5000, 0, now + 30 * MINUTE);
+
+        try {
+            governor.acquire();
+            Assert.fail("Where is my exception?");
+        } catch (GitHubRateLimitGovernor.RateLimitException e) {
+            Assert.assertEquals(now + 30 * MINUTE, e.getResetMillis());
+            Assert.assertTrue(e.getMessage().startsWith("Exceeded GitHub rate limit 5000, resets at "));
+            Assert.assertTrue(e.getMessage().endsWith(" which is later than max wait of 600 s, run build again after reset"));
+        }
+        Assert.assertEquals(0, sleeps.size());
+    }
+
+    @Test
+    public void failAtOnceIfThreadIsNotAllowedToWait() throws IOException {
+        governor.observe(5000, 0, now + MINUTE);
+
+        GitHubRateLimitGovernor.setWaitAllowed(false);
+        try {
+            governor.acquire();
+            Assert.fail("Where is my exception?");
+        } catch (GitHubRateLimitGovernor.RateLimitException e) {
+            Assert.assertEquals(now + MINUTE, e.getResetMillis());
+        } finally {
+            GitHubRateLimitGovernor.setWaitAllowed(true);
+        }
+        Assert.assertEquals(0, sleeps.size());
+
+        governor.acquire();
+        Assert.assertEquals(1, sleeps.size());
+    }
+
+}
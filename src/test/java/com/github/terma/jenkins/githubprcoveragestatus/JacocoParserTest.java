@@ -20,6 +20,10 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
 public class JacocoParserTest {
 
     @Test
@@ -27,7 +31,7 @@ public class JacocoParserTest {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
 
-        Assert.assertEquals(0.22, new JacocoParser("LINE").get(filePath), 0.1);
+        Assert.assertEquals(0.22, new JacocoParser("LINE").get(filePath).getCoverage(), 0.1);
     }
 
     @Test
@@ -35,7 +39,7 @@ public class JacocoParserTest {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco-no-code.xml").getFile();
 
-        Assert.assertEquals(0, new JacocoParser("LINE").get(filePath), 0.1);
+        Assert.assertEquals(0, new JacocoParser("LINE").get(filePath).getCoverage(), 0.1);
     }
 
     @Test
@@ -43,7 +47,7 @@ public class JacocoParserTest {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
 
-        Assert.assertEquals(0.22, new JacocoParser(null).get(filePath), 0.1);
+        Assert.assertEquals(0.22, new JacocoParser(null).get(filePath).getCoverage(), 0.1);
     }
 
     @Test
@@ -51,7 +55,7 @@ public class JacocoParserTest {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
 
-        Assert.assertEquals(0.22, new JacocoParser("random").get(filePath), 0.1);
+        Assert.assertEquals(0.22, new JacocoParser("random").get(filePath).getCoverage(), 0.1);
     }
 
     @Test
@@ -67,12 +71,7 @@ public class JacocoParserTest {
             Assert.assertEquals(
                     "Strange Jacoco report!\n" +
                             "File path: FILE_PATH\n" +
-                            "Can't extract float value by XPath: /report/counter[@type='LINE']/@missed\n" +
-                            "from:\n" +
-                            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.0//EN\"\n" +
-                            "        \"report.dtd\">\n" +
-                            "<report name=\"GitHub Pull Request Coverage Status\">\n" +
-                            "</report>",
+                            "Can't read number from attribute: report/counter[type=LINE]@missed",
                     messageWithoutAbsolutePath);
         }
     }
@@ -90,13 +89,7 @@ public class JacocoParserTest {
             Assert.assertEquals(
                     "Strange Jacoco report!\n" +
                             "File path: FILE_PATH\n" +
-                            "Can't extract float value by XPath: /report/counter[@type='LINE']/@missed\n" +
-                            "from:\n" +
-                            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.0//EN\"\n" +
-                            "        \"report.dtd\">\n" +
-                            "<report name=\"GitHub Pull Request Coverage Status\">\n" +
-                            "    <counter type=\"LINE\" missed=\"X\" covered=\"0\"/>\n" +
-                            "</report>",
+                            "Can't read number from attribute: report/counter[type=LINE]@missed",
                     messageWithoutAbsolutePath);
         }
     }
@@ -114,13 +107,7 @@ public class JacocoParserTest {
             Assert.assertEquals(
                     "Strange Jacoco report!\n" +
                             "File path: FILE_PATH\n" +
-                            "Can't extract float value by XPath: /report/counter[@type='LINE']/@covered\n" +
-                            "from:\n" +
-                            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.0//EN\"\n" +
-                            "        \"report.dtd\">\n" +
-                            "<report name=\"GitHub Pull Request Coverage Status\">\n" +
-                            "    <counter type=\"LINE\" missed=\"0\" covered=\"X\"/>\n" +
-                            "</report>",
+                            "Can't read number from attribute: report/counter[type=LINE]@covered",
                     messageWithoutAbsolutePath);
         }
     }
@@ -135,4 +122,104 @@ public class JacocoParserTest {
         }
     }
 
+    @Test
+    public void extractAllTopLevelCountersAndSkipNested() {
+        String filePath = JacocoParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
+
+        Assert.assertEquals(243f / 960, new JacocoParser("INSTRUCTION").get(filePath).getCoverage(), 0.0001);
+        Assert.assertEquals(48f / 217, new JacocoParser("LINE").get(filePath).getCoverage(), 0.0001);
+        Assert.assertEquals(26f / 95, new JacocoParser("COMPLEXITY").get(filePath).getCoverage(), 0.0001);
+        Assert.assertEquals(20f / 69, new JacocoParser("METHOD").get(filePath).getCoverage(), 0.0001);
+        Assert.assertEquals(8f / 15, new JacocoParser("CLASS").get(filePath).getCoverage(), 0.0001);
+    }
+
+    @Test
+    public void keepCountsOfAllCountersForDetails() {
+        String filePath = JacocoParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
+
+        final CoverageCounts counts = new JacocoParser("LINE").get(filePath);
+
+        Assert.assertEquals(48, counts.getCovered());
+        Assert.assertEquals(169, counts.getMissed());
+        Assert.assertEquals(15, counts.getCovered(CoverageCounts.Type.BRANCH));
+        Assert.assertEquals(37, counts.getMissed(CoverageCounts.Type.BRANCH));
+        Assert.assertEquals(243, counts.getCovered(CoverageCounts.Type.INSTRUCTION));
+        Assert.assertEquals(7, counts.getMissed(CoverageCounts.Type.CLASS));
+    }
+
+    @Test
+    public void readOnlyTopLevelCountersOfLargeReport() {
+        final SyntheticReport report = new SyntheticReport(100_000);
+
+        final CoverageCounts counts = new JacocoParser("LINE").get("synthetic", report);
+
+        // nested counters of packages, classes and methods are 9/9, sum of them would be far away
+        Assert.assertEquals(0.25, counts.getCoverage(), 0.001);
+        Assert.assertEquals(3, counts.getMissed());
+        Assert.assertEquals(1, counts.getCovered());
+        Assert.assertEquals(1, counts.getCovered(CoverageCounts.Type.CLASS));
+    }
+
+    /**
+     * Generates Jacoco report on the fly, top level counters go after all packages.
+     * Heap of parser over large report is measured by <code>ParserBenchmark</code>.
+     */
+    private static class SyntheticReport extends InputStream {
+
+        private static final String PACKAGE = "<package name=\"p%1$d\"><class name=\"p%1$d/C\">" +
+                "<method name=\"m\" desc=\"()V\" line=\"1\"><counter type=\"LINE\" missed=\"9\" covered=\"9\"/></method>" +
+                "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/><counter type=\"CLASS\" missed=\"0\" covered=\"9\"/></class>" +
+                "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/></package>\n";
+
+        private final int packages;
+        private int generated = -1;
+        private byte[] chunk = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+                "<!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.0//EN\" \"report.dtd\">" +
+                "<report name=\"synthetic\">\n").getBytes(StandardCharsets.UTF_8);
+        private int position;
+
+        SyntheticReport(int packages) {
+            this.packages = packages;
+        }
+
+        private boolean nextChunk() {
+            if (generated > packages) return false;
+            generated++;
+            position = 0;
+            if (generated < packages) {
+                chunk = String.format(PACKAGE, generated).getBytes(StandardCharsets.UTF_8);
+            } else if (generated == packages) {
+                chunk = ("<counter type=\"INSTRUCTION\" missed=\"3\" covered=\"1\"/>" +
+                        "<counter type=\"LINE\" missed=\"3\" covered=\"1\"/>" +
+                        "<counter type=\"COMPLEXITY\" missed=\"3\" covered=\"1\"/>" +
+                        "<counter type=\"METHOD\" missed=\"3\" covered=\"1\"/>" +
+                        "<counter type=\"CLASS\" missed=\"3\" covered=\"1\"/>" +
+                        "</report>").getBytes(StandardCharsets.UTF_8);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (position >= chunk.length) {
+                if (!nextChunk()) return -1;
+            }
+            final int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class MasterCoverageStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File getLog() {
+        return new File(temporaryFolder.getRoot(), "store/master-coverage.log");
+    }
+
+    private MasterCoverageStore load() throws IOException {
+        final MasterCoverageStore store = new MasterCoverageStore(getLog());
+        store.load();
+        return store;
+    }
+
+    @Test
+    public void emptyIfNoLog() throws IOException {
+        final MasterCoverageStore store = load();
+
+        Assert.assertNull(store.get("a"));
+        Assert.assertTrue(store.getAll().isEmpty());
+    }
+
+    @Test
+    public void lastWriteWinsAndSurvivesReload() throws IOException {
+        final MasterCoverageStore store = load();
+        store.put("git@github.com:a/b.git-master", 0.5f);
+        store.put("git@github.com:c/d.git", 0.7f);
+        store.put("git@github.com:a/b.git-master", 0.6f);
+
+        Assert.assertEquals(0.6f, store.get("git@github.com:a/b.git-master"), 0);
+
+        final MasterCoverageStore reloaded = load();
+        Assert.assertEquals(0.6f, reloaded.get("git@github.com:a/b.git-master"), 0);
+        Assert.assertEquals(0.7f, reloaded.get("git@github.com:c/d.git"), 0);
+        Assert.assertEquals(3, reloaded.getRecords());
+    }
+
+    @Test
+    public void compactLogWhenTooManyRecords() throws IOException {
+        final MasterCoverageStore store = load();
+        for (int i = 0; i < MasterCoverageStore.MIN_RECORDS_TO_COMPACT; i++) {
+            store.put("repo" + (i % 10), i);
+        }
+
+        Assert.assertEquals(10, store.getRecords());
+        final MasterCoverageStore reloaded = load();
+        Assert.assertEquals(10, reloaded.getRecords());
+        Assert.assertEquals(MasterCoverageStore.MIN_RECORDS_TO_COMPACT - 1, reloaded.get("repo3"), 0);
+    }
+
+    @Test
+    public void ignoreAndCutPartiallyWrittenRecord() throws IOException {
+        final MasterCoverageStore store = load();
+        store.put("a", 0.1f);
+        final long length = getLog().length();
+        try (FileOutputStream out = new FileOutputStream(getLog(), true)) {
+            out.write(new byte[]{0, 10, 'b', 'r'});
+        }
+
+        final MasterCoverageStore reloaded = load();
+        Assert.assertEquals(0.1f, reloaded.get("a"), 0);
+        Assert.assertEquals(1, reloaded.getAll().size());
+        Assert.assertEquals(length, getLog().length());
+
+        reloaded.put("b", 0.2f);
+        Assert.assertEquals(0.2f, load().get("b"), 0);
+    }
+
+    @Test
+    public void writeNextRecordOverBytesOfFailedWrite() throws IOException {
+        final MasterCoverageStore store = load();
+        store.put("a", 0.1f);
+        // like write which failed in the middle of record
+        try (FileOutputStream out = new FileOutputStream(getLog(), true)) {
+            out.write(new byte[]{0, 10, 'b', 'r', 'o', 'k', 'e', 'n', 0, 0, 0, 0, 0, 0, 0});
+        }
+
+        store.put("c", 0.3f);
+        store.put("d", 0.4f);
+
+        final MasterCoverageStore reloaded = load();
+        Assert.assertEquals(0.1f, reloaded.get("a"), 0);
+        Assert.assertEquals(0.3f, reloaded.get("c"), 0);
+        Assert.assertEquals(0.4f, reloaded.get("d"), 0);
+        Assert.assertEquals(3, reloaded.getRecords());
+    }
+
+    @Test
+    public void migrateOnlyNotTrackedRepos() throws IOException {
+        final MasterCoverageStore store = load();
+        store.put("a", 0.1f);
+
+        final Map<String, Float> old = new HashMap<>();
+        old.put("a", 0.9f);
+        old.put("b", 0.2f);
+        store.putAllAbsent(old);
+
+        Assert.assertEquals(0.1f, load().get("a"), 0);
+        Assert.assertEquals(0.2f, load().get("b"), 0);
+    }
+
+}
@@ -20,6 +20,8 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 public class MessageTest {
 
     @Test
@@ -99,4 +101,23 @@ public class MessageTest {
                 new Message(0.7f, 0.5f).forComment(buildUrl, jenkinsUrl, 0, 0, false));
     }
 
+    @Test
+    public void forBuildListsFilesWhichLostCoverage() {
+        final CoverageDiff diff = new CoverageDiff(Arrays.asList(
+                new CoverageDiff.FileDiff("a/Lost.java", false, 1, 0.5f, new int[]{10}),
+                new CoverageDiff.FileDiff("a/New.java", true, 0, 0, new int[]{7, 8})));
+
+        Assert.assertEquals("Coverage 50% changed -10.0% vs master 60%" +
+                        "<BR/>a/Lost.java: -50.0000%<BR/>a/New.java: -0.0 %",
+                new Message(0.5f, 0.6f, diff).forBuild());
+    }
+
+    @Test
+    public void forBuildAsksToCheckReportsIfCoverageDroppedWithoutDiff() {
+        Assert.assertEquals("Coverage 50% changed -10.0% vs master 60%" +
+                        "<BR/>Failed to get the coverage reduce reason. Check coverage reports manually",
+                new Message(0.5f, 0.6f).forBuild());
+        Assert.assertEquals("Coverage 60% changed 0.0% vs master 60%", new Message(0.6f, 0.6f).forBuild());
+    }
+
 }
@@ -0,0 +1,207 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParseCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File workspace;
+    private File report;
+
+    private void write(final String content, final long modified) throws IOException {
+        FileUtils.writeStringToFile(report, content, StandardCharsets.UTF_8);
+        Assert.assertTrue(report.setLastModified(modified));
+    }
+
+    private void init() throws IOException {
+        workspace = temporaryFolder.newFolder("ws");
+        report = new File(workspace, "jacoco.xml");
+        write("<report>1</report>", 1000000L);
+    }
+
+    @After
+    public void deleteCache() throws IOException {
+        if (workspace != null) FileUtils.deleteDirectory(ParseCache.getTempDir(workspace));
+    }
+
+    @Test
+    public void hitIfReportIsNotChanged() throws IOException {
+        init();
+        final ParseCache cache = ParseCache.load(workspace);
+        Assert.assertNull(cache.get("jacoco.xml", report));
+        cache.put("jacoco.xml", report, CoverageCounts.ofReport(1, 3));
+
+        final CoverageCounts counts = cache.get("jacoco.xml", report);
+
+        Assert.assertNotNull(counts);
+        Assert.assertEquals(0.25f, counts.getCoverage(), 0);
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * @return parser which reads only first bytes of report
+     */
+    private static CoverageReportParser readFirst(final int bytes, final AtomicInteger parses) {
+        return new CoverageReportParser() {
+            @Override
+            public CoverageCounts get(String filePath) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CoverageCounts get(String filePath, InputStream in) {
+                parses.incrementAndGet();
+                try {
+                    Assert.assertEquals('<', in.read());
+                    Assert.assertEquals(bytes - 1, in.read(new byte[bytes - 1]));
+                    in.close();
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e);
+                }
+                return CoverageCounts.ofReport(1, 3);
+            }
+        };
+    }
+
+    @Test
+    public void hitAfterParseOfReportWhichParserReadOnlyPartially() throws IOException {
+        init();
+        final AtomicInteger parses = new AtomicInteger();
+        final CoverageReportParser parser = readFirst(10, parses);
+        final ParseCache cache = ParseCache.load(workspace);
+
+        Assert.assertEquals(0.25f, cache.parse("jacoco.xml", report, parser).getCoverage(), 0);
+        final CoverageCounts counts = cache.get("jacoco.xml", report);
+
+        Assert.assertNotNull(counts);
+        Assert.assertEquals(0.25f, counts.getCoverage(), 0);
+        Assert.assertEquals(1, parses.get());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void dontCheckReportWhichParserReadLessThanHalfOf() throws IOException {
+        init();
+        final AtomicInteger parses = new AtomicInteger();
+        final CoverageReportParser parser = readFirst(2, parses);
+        final ParseCache cache = ParseCache.load(workspace);
+
+        Assert.assertEquals(0.25f, cache.parse("jacoco.xml", report, parser).getCoverage(), 0);
+        Assert.assertNull(cache.get("jacoco.xml", report));
+        Assert.assertEquals(0.25f, cache.parse("jacoco.xml", report, parser).getCoverage(), 0);
+
+        Assert.assertEquals(2, parses.get());
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void survivesReload() throws IOException {
+        init();
+        final ParseCache cache = ParseCache.load(workspace);
+        cache.put("jacoco.xml", report, CoverageCounts.ofReport(1, 3).with(CoverageCounts.Type.BRANCH, 2, 2));
+        cache.save();
+
+        final CoverageCounts counts = ParseCache.load(workspace).get("jacoco.xml", report);
+
+        Assert.assertNotNull(counts);
+        Assert.assertEquals(0.25f, counts.getCoverage(), 0);
+        Assert.assertEquals(2, counts.getCovered(CoverageCounts.Type.BRANCH));
+        Assert.assertTrue(new File(ParseCache.getTempDir(workspace), ParseCache.FILE_NAME).exists());
+    }
+
+    @Test
+    public void missIfContentChangedWithSameSizeAndTime() throws IOException {
+        init();
+        final ParseCache cache = ParseCache.load(workspace);
+        cache.put("jacoco.xml", report, CoverageCounts.ofReport(1, 3));
+
+        write("<report>2</report>", 1000000L);
+
+        Assert.assertNull(cache.get("jacoco.xml", report));
+    }
+
+    @Test
+    public void missIfSizeOrTimeChanged() throws IOException {
+        init();
+        final ParseCache cache = ParseCache.load(workspace);
+        cache.put("jacoco.xml", report, CoverageCounts.ofReport(1, 3));
+
+        write("<report>1</report>", 2000000L);
+        Assert.assertNull(cache.get("jacoco.xml", report));
+
+        cache.put("jacoco.xml", report, CoverageCounts.ofReport(1, 3));
+        write("<report>11</report>", 2000000L);
+        Assert.assertNull(cache.get("jacoco.xml", report));
+    }
+
+    @Test
+    public void missIfOtherKey() throws IOException {
+        init();
+        final ParseCache cache = ParseCache.load(workspace);
+        cache.put("jacoco.xml\njacoco:LINE", report, CoverageCounts.ofReport(1, 3));
+
+        Assert.assertNull(cache.get("jacoco.xml\njacoco:BRANCH", report));
+    }
+
+    @Test
+    public void keepOnlyMaxEntries() throws IOException {
+        init();
+        final ParseCache cache = ParseCache.load(workspace);
+        for (int i = 0; i <= ParseCache.MAX_ENTRIES; i++) {
+            cache.put("r" + i, report, CoverageCounts.ofReport(1, 3));
+        }
+
+        Assert.assertEquals(ParseCache.MAX_ENTRIES, cache.size());
+        Assert.assertNull(cache.get("r0", report));
+        Assert.assertNotNull(cache.get("r" + ParseCache.MAX_ENTRIES, report));
+    }
+
+    @Test
+    public void ignoreBrokenCache() throws IOException {
+        init();
+        final File file = new File(ParseCache.getTempDir(workspace), ParseCache.FILE_NAME);
+        FileUtils.writeStringToFile(file, "GPCP broken", StandardCharsets.UTF_8);
+
+        final ParseCache cache = ParseCache.load(workspace);
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get("jacoco.xml", report));
+        cache.put("jacoco.xml", report, CoverageCounts.ofReport(1, 3));
+        cache.save();
+        Assert.assertNotNull(ParseCache.load(workspace).get("jacoco.xml", report));
+    }
+
+}
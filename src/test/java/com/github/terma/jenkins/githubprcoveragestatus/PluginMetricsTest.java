@@ -0,0 +1,101 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+public class PluginMetricsTest {
+
+    private final List<String> recorded = new ArrayList<>();
+
+    private final PluginMetrics.Sink sink = new PluginMetrics.Sink() {
+        @Override
+        public void count(String name, long n) {
+            recorded.add("count " + name + " " + n);
+        }
+
+        @Override
+        public void histogram(String name, long value) {
+            recorded.add("histogram " + name + " " + value);
+        }
+
+        @Override
+        public void time(String name, long millis) {
+            recorded.add("time " + name);
+        }
+    };
+
+    @After
+    public void after() {
+        PluginMetrics.setSink(null);
+    }
+
+    @Test
+    public void doNothingWithoutJenkins() {
+        PluginMetrics.count("github.publish.retries", 1);
+        PluginMetrics.record(new BuildMetricsAction("step"));
+    }
+
+    @Test
+    public void recordStagesScanAndReportsOfStep() throws Exception {
+        PluginMetrics.setSink(sink);
+        final BuildStages stages = new BuildStages(new PrintStream(new ByteArrayOutputStream()), BuildStages.REMOTE_EXECUTOR);
+        stages.run("build coverage", new Callable<Float>() {
+            @Override
+            public Float call() {
+                return 0.5f;
+            }
+        });
+        final ReportStats reports = new ReportStats();
+        reports.add("jacoco", 100, 1_000_000);
+        reports.add("jacoco", 50, 1_000_000);
+        final BuildMetricsAction metrics = new BuildMetricsAction("step");
+        metrics.addStages(stages);
+        metrics.addReports(reports, 7, 3);
+
+        PluginMetrics.record(metrics);
+
+        Assert.assertEquals("[time stage.build-coverage, time scan, histogram scan.directories 7, "
+                + "count reports.jacoco.files 2, histogram reports.jacoco.bytes 150, time reports.jacoco.parse]", recorded.toString());
+    }
+
+    @Test
+    public void passCallsToSink() {
+        PluginMetrics.setSink(sink);
+
+        PluginMetrics.count("github.publish.retries", 2);
+        PluginMetrics.histogram("scan.directories", 5);
+
+        Assert.assertEquals("[count github.publish.retries 2, histogram scan.directories 5]", recorded.toString());
+    }
+
+    @Test
+    public void metricNameFromText() {
+        Assert.assertEquals("build-coverage", PluginMetrics.toName("build coverage"));
+        Assert.assertEquals("github-repository", PluginMetrics.toName("GitHub repository"));
+    }
+
+}
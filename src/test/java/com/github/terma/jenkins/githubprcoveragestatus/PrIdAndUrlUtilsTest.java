@@ -23,14 +23,12 @@ import hudson.model.TaskListener;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
-import org.kohsuke.github.GHPullRequest;
 
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -46,14 +44,12 @@ public class PrIdAndUrlUtilsTest {
     private EnvVars envVars = mock(EnvVars.class);
     private TaskListener listener = mock(TaskListener.class);
     private PrintStream logger = mock(PrintStream.class);
-    private GHPullRequest ghPullRequest = mock(GHPullRequest.class);
     private PullRequestRepository pullRequestRepository = mock(PullRequestRepository.class);
     private Map<String, String> scmVars;
 
     @Before
     public void initMocks() throws IOException, InterruptedException {
         ServiceRegistry.setPullRequestRepository(pullRequestRepository);
-        when(pullRequestRepository.getPullRequestFor(anyString(), anyString(), anyString())).thenReturn(ghPullRequest);
 
         when(listener.getLogger()).thenReturn(logger);
         when(build.getEnvironment(listener)).thenReturn(envVars);
@@ -90,7 +86,8 @@ public class PrIdAndUrlUtilsTest {
     public void getGitPrIdFromScmVarsIfOtherNull() throws IOException, InterruptedException {
         when(envVars.get(PrIdAndUrlUtils.GIT_PR_ID_ENV_PROPERTY)).thenReturn(null);
         when(envVars.get(PrIdAndUrlUtils.CHANGE_ID_PROPERTY)).thenReturn(null);
-        when(ghPullRequest.getNumber()).thenReturn(SCM_ENVS_PR_ID_INT);
+        when(pullRequestRepository.getPullRequestId("SCM_VARS_GIT_URL", "SCM_VARS_GIT_BRANCH", "SCM_VARS_GIT_COMMIT"))
+                .thenReturn(SCM_ENVS_PR_ID_INT);
         Assert.assertEquals(SCM_ENVS_PR_ID_INT, PrIdAndUrlUtils.getPrId(scmVars, build, listener));
     }
 
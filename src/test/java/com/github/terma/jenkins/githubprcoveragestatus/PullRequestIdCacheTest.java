@@ -0,0 +1,59 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PullRequestIdCacheTest {
+
+    private final PullRequestIdCache cache = new PullRequestIdCache(1000);
+
+    @Test
+    public void returnNullIfNotCached() {
+        Assert.assertNull(cache.get("repo", "branch", "sha", 0));
+    }
+
+    @Test
+    public void returnIdForSameRepoBranchAndSha() {
+        cache.put("repo", "branch", "sha", 12, 0);
+
+        Assert.assertEquals(Integer.valueOf(12), cache.get("repo", "branch", "sha", 999));
+        Assert.assertNull(cache.get("other", "branch", "sha", 999));
+        Assert.assertNull(cache.get("repo", "other", "sha", 999));
+    }
+
+    @Test
+    public void missIfBranchHasNewHead() {
+        cache.put("repo", "branch", "sha", 12, 0);
+
+        Assert.assertNull(cache.get("repo", "branch", "new-sha", 1));
+
+        cache.put("repo", "branch", "new-sha", 12, 1);
+        Assert.assertEquals(Integer.valueOf(12), cache.get("repo", "branch", "new-sha", 1));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void expireAfterTtl() {
+        cache.put("repo", "branch", "sha", 12, 0);
+
+        Assert.assertNull(cache.get("repo", "branch", "sha", 1000));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ReportInputTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String write(final int size) throws IOException {
+        final byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) content[i] = (byte) i;
+        final File file = temporaryFolder.newFile();
+        FileUtils.writeByteArrayToFile(file, content);
+        return file.getPath();
+    }
+
+    @Test
+    public void readSameBytesMappedByManyWindowsAndBuffered() throws IOException {
+        final String path = write(10_000);
+
+        final byte[] buffered;
+        try (InputStream in = ReportInput.open(path, false, 0, 1024)) {
+            buffered = IOUtils.toByteArray(in);
+        }
+        final byte[] mapped;
+        try (InputStream in = ReportInput.open(path, true, 0, 1024)) {
+            mapped = IOUtils.toByteArray(in);
+        }
+
+        Assert.assertEquals(10_000, mapped.length);
+        Assert.assertArrayEquals(buffered, mapped);
+        Assert.assertArrayEquals(FileUtils.readFileToByteArray(new File(path)), mapped);
+    }
+
+    @Test
+    public void readByteByByteOverWindowBorder() throws IOException {
+        final String path = write(300);
+
+        try (InputStream in = ReportInput.open(path, true, 0, 100)) {
+            for (int i = 0; i < 300; i++) Assert.assertEquals(i & 0xff, in.read());
+            Assert.assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void skipWithinWindowAndToNextWindows() throws IOException {
+        final String path = write(1000);
+
+        try (InputStream in = ReportInput.open(path, true, 0, 100)) {
+            Assert.assertEquals(10, in.skip(10));
+            Assert.assertEquals(10, in.read());
+            Assert.assertEquals(250, in.skip(250));
+            Assert.assertEquals(261 & 0xff, in.read());
+            Assert.assertEquals(738, in.skip(5000));
+            Assert.assertEquals(-1, in.read());
+            Assert.assertEquals(0, in.available());
+        }
+    }
+
+    @Test
+    public void readEmptyFile() throws IOException {
+        final String path = write(0);
+
+        try (InputStream in = ReportInput.open(path, true, 0, 100)) {
+            Assert.assertEquals(-1, in.read());
+            Assert.assertEquals(-1, in.read(new byte[10], 0, 10));
+        }
+    }
+
+    @Test
+    public void bufferedIfSmallerThanThreshold() throws IOException {
+        final String path = write(10);
+
+        try (InputStream in = ReportInput.open(path, true, 11, 100)) {
+            Assert.assertEquals(0, in.read());
+            Assert.assertEquals(9, in.available());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failIfNoFile() throws IOException {
+        ReportInput.open(new File(temporaryFolder.getRoot(), "missing.xml").getPath());
+    }
+
+}
@@ -3,6 +3,11 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.startsWith;
@@ -17,7 +22,7 @@ public class SimpleCovParserTest {
         String filePath = SimpleCovParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/SimpleCovParserTest/coverage.json").getFile();
 
-        float coverage = new SimpleCovParser().get(filePath);
+        float coverage = new SimpleCovParser().get(filePath).getCoverage();
 
         // won't be an exact match as we're converting double to float
         assertThat((double) coverage, is(closeTo(0.857142857142857, 0.00001)));
@@ -27,7 +32,7 @@ public class SimpleCovParserTest {
     @Test
     public void errorsReadingNoExistantFile() {
         try {
-            float coverage = new SimpleCovParser().get("wibble/wobble.not_here");
+            float coverage = new SimpleCovParser().get("wibble/wobble.not_here").getCoverage();
             TestCase.fail("should have thrown exception");
         } catch (IllegalArgumentException e) {
             assertThat(e.getMessage(), is(equalTo("Can't read SimpleCov report by path: wibble/wobble.not_here")));
@@ -40,24 +45,114 @@ public class SimpleCovParserTest {
                 "/com/github/terma/jenkins/githubprcoveragestatus/SimpleCovParserTest/coverage_no_covered_percent.json").getFile();
 
         try {
-            float coverage = new SimpleCovParser().get(filePath);
+            float coverage = new SimpleCovParser().get(filePath).getCoverage();
             TestCase.fail("should not reach here");
         } catch (IllegalArgumentException e) {
-            assertThat(e.getMessage(), startsWith("Strange SimpleCov report!\nCan't extract float value by JsonPath:"));
+            assertThat(e.getMessage(), startsWith("Strange SimpleCov report!\nCan't find metrics.covered_percent\n"));
         }
     }
 
     @Test
     public void inValidJson() {
         String filePath = SimpleCovParserTest.class.getResource(
-                "/com/github/terma/jenkins/githubprcoveragestatus/SimpleCovParserTest/coverage_invalid.json").getFile();
+                "/com/github/terma/jenkins/githubprcoveragestatus/SimpleCovParserTest/coverage_truncated.json").getFile();
 
         try {
-            float coverage = new SimpleCovParser().get(filePath);
+            float coverage = new SimpleCovParser().get(filePath).getCoverage();
             TestCase.fail("should not reach here");
         } catch (IllegalArgumentException e) {
-            assertThat(e.getMessage(), startsWith("Strange SimpleCov report!\nCan't extract float value by JsonPath:"));
+            assertThat(e.getMessage(), startsWith("Strange SimpleCov report!\nCan't parse: "));
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void stopReadingAfterCoveredPercent() {
+        // report is broken after metrics.covered_percent which is never read
+        String filePath = SimpleCovParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/SimpleCovParserTest/coverage_invalid.json").getFile();
+
+        float coverage = new SimpleCovParser().get(filePath).getCoverage();
+
+        assertThat((double) coverage, is(closeTo(0.857142857142857, 0.00001)));
+    }
+
+    @Test
+    public void stopReadingSyntheticReportAfterMetrics() {
+        final InputStream report = new SequenceInputStream(
+                new ByteArrayInputStream("{\"metrics\":{\"covered_percent\":25.0,\"covered_lines\":1,\"total_lines\":4,"
+                        .getBytes(StandardCharsets.UTF_8)),
+                new InputStream() {
+                    private long left = 1024L * 1024 * 1024;
+
+                    @Override
+                    public int read() {
+                        return left-- > 0 ? '[' : -1;
+                    }
+                });
+
+        assertThat((double) new SimpleCovParser().get("synthetic", report).getCoverage(), is(closeTo(0.25, 0.00001)));
+    }
+
+    @Test
+    public void sumPerFileLinesIfRequested() {
+        String filePath = SimpleCovParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/SimpleCovParserTest/coverage.json").getFile();
+
+        CoverageCounts counts = new SimpleCovParser(true).get(filePath);
+
+        assertThat((double) counts.getCoverage(), is(closeTo(0.857142857142857, 0.00001)));
+        assertThat(counts.getCovered(CoverageCounts.Type.LINE), is(6L));
+        assertThat(counts.getMissed(CoverageCounts.Type.LINE), is(1L));
+    }
+
+    @Test
+    public void weighByLineCountsOfMetrics() {
+        String filePath = SimpleCovParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/SimpleCovParserTest/coverage.json").getFile();
+
+        CoverageCounts counts = new SimpleCovParser().get(filePath);
+
+        assertThat(counts.isWeighted(), is(true));
+        assertThat(counts.getCovered(), is(6L));
+        assertThat(counts.getMissed(), is(1L));
+        assertThat(counts.getCovered(CoverageCounts.Type.LINE), is(6L));
+        assertThat(counts.getMissed(CoverageCounts.Type.LINE), is(1L));
+    }
+
+    @Test
+    public void onlyRatioIfMetricsHaveNoLineCounts() {
+        final InputStream report = new ByteArrayInputStream("{\"metrics\":{\"covered_percent\":40.0},\"files\":[]}"
+                .getBytes(StandardCharsets.UTF_8));
+
+        CoverageCounts counts = new SimpleCovParser().get("synthetic", report);
+
+        assertThat(counts.isWeighted(), is(false));
+        assertThat((double) counts.getCoverage(), is(closeTo(0.4, 0.00001)));
+    }
+
+    @Test
+    public void noPerFileLinesByDefault() {
+        final InputStream report = new ByteArrayInputStream(("{\"metrics\":{\"covered_percent\":25.0," +
+                "\"covered_lines\":1,\"total_lines\":4},\"files\":[{\"filename\":\"a.rb\",\"coverage\":[1,1,0]}]}")
+                .getBytes(StandardCharsets.UTF_8));
+
+        CoverageCounts counts = new SimpleCovParser().get("synthetic", report);
+
+        assertThat(counts.getCovered(CoverageCounts.Type.LINE), is(1L));
+        assertThat(counts.getMissed(CoverageCounts.Type.LINE), is(3L));
+    }
+
+    @Test
+    public void sumPerFileLinesOfNewCoverageFormatWhenMetricsGoFirst() {
+        final InputStream report = new ByteArrayInputStream(("{\"metrics\":{\"covered_percent\":50.0}," +
+                "\"files\":[{\"filename\":\"a.rb\",\"coverage\":{\"lines\":[1,0,null,\"ignored\",3]}}," +
+                "{\"filename\":\"b.rb\",\"coverage\":[0,null]}]}").getBytes(StandardCharsets.UTF_8));
+
+        CoverageCounts counts = new SimpleCovParser(true).get("synthetic", report);
+
+        assertThat((double) counts.getCoverage(), is(closeTo(0.5, 0.00001)));
+        assertThat(counts.getCovered(CoverageCounts.Type.LINE), is(2L));
+        assertThat(counts.getMissed(CoverageCounts.Type.LINE), is(2L));
+    }
+
+}
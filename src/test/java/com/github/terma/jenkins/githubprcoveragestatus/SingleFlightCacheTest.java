@@ -0,0 +1,193 @@
+/*
+
+    Copyright 2015-2016 Artem Stasiuk
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightCacheTest {
+
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private long now;
+
+    private final SingleFlightCache<String, String> cache = new SingleFlightCache<>(100, 1000,
+            new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    refreshes.add(command);
+                }
+            },
+            new SingleFlightCache.Ticker() {
+                @Override
+                public long now() {
+                    return now;
+                }
+            });
+
+    private SingleFlightCache.Loader<String> loader(final String value) {
+        return new SingleFlightCache.Loader<String>() {
+            @Override
+            public String load() {
+                loads.incrementAndGet();
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void loadOnceTillTtl() throws Exception {
+        Assert.assertEquals("a", cache.get("k", loader("a")));
+        now = 99;
+        Assert.assertEquals("a", cache.get("k", loader("b")));
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void returnStaleValueAndRefreshInBackground() throws Exception {
+        cache.get("k", loader("a"));
+        now = 100;
+
+        Assert.assertEquals("a", cache.get("k", loader("b")));
+        Assert.assertEquals("a", cache.get("k", loader("c")));
+        Assert.assertEquals(1, refreshes.size());
+
+        refreshes.get(0).run();
+        Assert.assertEquals("b", cache.get("k", loader("d")));
+        Assert.assertEquals(2, cache.getStaleHits());
+    }
+
+    @Test
+    public void loadAgainWhenStalePeriodIsOver() throws Exception {
+        cache.get("k", loader("a"));
+        now = 1100;
+
+        Assert.assertEquals("b", cache.get("k", loader("b")));
+        Assert.assertEquals(0, refreshes.size());
+    }
+
+    @Test
+    public void evictEntriesOlderThanStalePeriodOnWrite() throws Exception {
+        cache.get("old", loader("a"));
+        now = 500;
+        cache.get("recent", loader("b"));
+        now = 1100;
+
+        cache.put("new", "c");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("b", cache.get("recent", loader("d")));
+    }
+
+    @Test
+    public void hashLoginOfSonarKeyAndDontShowIt() {
+        final SonarCache.Key key = SonarCache.key("http://sonar", "secret-token", "repo");
+
+        Assert.assertEquals(key, SonarCache.key("http://sonar", "secret-token", "repo"));
+        Assert.assertNotEquals(key, SonarCache.key("http://sonar", "other-token", "repo"));
+        Assert.assertNotEquals(key, SonarCache.key("http://sonar", null, "repo"));
+        Assert.assertEquals("http://sonar repo", key.toString());
+    }
+
+    @Test
+    public void keepStaleValueIfRefreshFailed() throws Exception {
+        cache.get("k", loader("a"));
+        now = 100;
+
+        cache.get("k", new SingleFlightCache.Loader<String>() {
+            @Override
+            public String load() throws Exception {
+                throw new IOException("down");
+            }
+        });
+        refreshes.get(0).run();
+
+        Assert.assertEquals("a", cache.get("k", loader("b")));
+    }
+
+    @Test
+    public void throwLoaderExceptionAndDontCacheIt() throws Exception {
+        try {
+            cache.get("k", new SingleFlightCache.Loader<String>() {
+                @Override
+                public String load() throws Exception {
+                    throw new IOException("down");
+                }
+            });
+            Assert.fail("Where is my exception?");
+        } catch (IOException e) {
+            Assert.assertEquals("down", e.getMessage());
+        }
+
+        Assert.assertEquals("a", cache.get("k", loader("a")));
+    }
+
+    @Test
+    public void coalesceConcurrentLoadsOfSameKey() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.get("k", new SingleFlightCache.Loader<String>() {
+                        @Override
+                        public String load() throws Exception {
+                            loads.incrementAndGet();
+                            started.countDown();
+                            release.await();
+                            return "a";
+                        }
+                    });
+                }
+            });
+            started.await();
+            final Future<String> second = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.get("k", loader("b"));
+                }
+            });
+            while (cache.getCoalesced() == 0) Thread.sleep(1);
+            release.countDown();
+
+            Assert.assertEquals("a", first.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals("a", second.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
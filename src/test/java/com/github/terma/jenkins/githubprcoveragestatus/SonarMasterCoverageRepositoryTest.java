@@ -10,6 +10,7 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.concurrent.Executor;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
@@ -26,6 +27,8 @@ public class SonarMasterCoverageRepositoryTest {
 
     private SonarMasterCoverageRepository sonarMasterCoverageRepository;
     private ByteArrayOutputStream buildLogOutputStream;
+    private SonarCache cache;
+    private long now;
 
     @After
     public void afterTest() {
@@ -80,10 +83,83 @@ public class SonarMasterCoverageRepositoryTest {
         assertThat(sonarMasterCoverageRepository.get(GIT_REPO_URL), is(0f));
     }
 
+    @Test
+    public void should_reuse_cached_project_and_coverage_by_next_builds() throws IOException {
+        givenCoverageRepository(null, null);
+        givenProjectResponseWithSingleMatch(null, null);
+        givenMeasureResponse();
+        wireMockRule.resetRequests();
+
+        assertThat(sonarMasterCoverageRepository.get(GIT_REPO_URL), is(0.953f));
+        assertThat(newCoverageRepository(null, null).get(GIT_REPO_URL), is(0.953f));
+
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/api/projects/index")));
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/api/measures/component")));
+    }
+
+    @Test
+    public void should_not_share_cached_project_between_logins() throws IOException {
+        givenCoverageRepository(null, null);
+        givenProjectResponseWithSingleMatch(null, null);
+        givenMeasureResponse();
+        wireMockRule.resetRequests();
+
+        sonarMasterCoverageRepository.get(GIT_REPO_URL);
+        newCoverageRepository("token", "").get(GIT_REPO_URL);
+
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/api/projects/index")));
+    }
+
+    @Test
+    public void should_return_stale_coverage_and_refresh_it() throws IOException {
+        givenCoverageRepository(null, null);
+        givenProjectResponseWithSingleMatch(null, null);
+        givenMeasureResponse();
+        assertThat(sonarMasterCoverageRepository.get(GIT_REPO_URL), is(0.953f));
+
+        wireMockRule.stubFor(get(urlPathEqualTo("/api/measures/component"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"component\": {\"measures\": [{\"value\": \"50.0\"}]}}")
+                )
+        );
+        now += SonarCache.COVERAGE_TTL_MILLIS;
+
+        assertThat(sonarMasterCoverageRepository.get(GIT_REPO_URL), is(0.953f));
+        assertThat(sonarMasterCoverageRepository.get(GIT_REPO_URL), is(0.5f));
+    }
+
+    @Test
+    public void should_not_cache_failures() throws IOException {
+        givenCoverageRepository(null, null);
+        givenProjectResponseWithSingleMatch(null, null);
+        givenNotFoundMeasureResponse();
+        assertThat(sonarMasterCoverageRepository.get(GIT_REPO_URL), is(0f));
+
+        givenMeasureResponse();
+
+        assertThat(sonarMasterCoverageRepository.get(GIT_REPO_URL), is(0.953f));
+    }
+
     private void givenCoverageRepository(final String login, String password) {
         buildLogOutputStream = new ByteArrayOutputStream();
-        sonarMasterCoverageRepository = new SonarMasterCoverageRepository("http://localhost:" + wireMockRule.port(),
-                login, password, new PrintStream(buildLogOutputStream, true));
+        cache = new SonarCache(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, new SingleFlightCache.Ticker() {
+            @Override
+            public long now() {
+                return now;
+            }
+        });
+        sonarMasterCoverageRepository = newCoverageRepository(login, password);
+    }
+
+    private SonarMasterCoverageRepository newCoverageRepository(final String login, String password) {
+        return new SonarMasterCoverageRepository("http://localhost:" + wireMockRule.port(),
+                login, password, new PrintStream(buildLogOutputStream, true), cache, HttpTransport.SHARED);
     }
 
     private void givenProjectResponseWithSingleMatch(final String login, String password) throws IOException {